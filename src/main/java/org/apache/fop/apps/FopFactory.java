@@ -26,9 +26,12 @@ import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URI;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import org.xml.sax.SAXException;
 
@@ -47,7 +50,11 @@ import org.apache.fop.fo.ElementMapping;
 import org.apache.fop.fo.ElementMappingRegistry;
 import org.apache.fop.fonts.FontManager;
 import org.apache.fop.hyphenation.HyphenationTreeCache;
+import org.apache.fop.layoutmgr.ActiveNodeBeam;
+import org.apache.fop.layoutmgr.ContentWidthCache;
+import org.apache.fop.layoutmgr.HyphenationCache;
 import org.apache.fop.layoutmgr.LayoutManagerMaker;
+import org.apache.fop.layoutmgr.inline.LineBreakCache;
 import org.apache.fop.render.ImageHandlerRegistry;
 import org.apache.fop.render.RendererConfig;
 import org.apache.fop.render.RendererConfig.RendererConfigParser;
@@ -67,6 +74,10 @@ public final class FopFactory implements ImageContext {
     /** logger instance */
     private static Log log = LogFactory.getLog(FopFactory.class);
 
+    /** The factories which created the live user agents, see {@link #getFactory(FOUserAgent)} */
+    private static final Map<FOUserAgent, FopFactory> USER_AGENT_FACTORIES
+            = Collections.synchronizedMap(new WeakHashMap<FOUserAgent, FopFactory>());
+
     /** Factory for Renderers and FOEventHandlers */
     private final RendererFactory rendererFactory;
 
@@ -93,6 +104,24 @@ public final class FopFactory implements ImageContext {
 
     private HyphenationTreeCache hyphenationTreeCache;
 
+    private volatile LayoutTuning layoutTuning;
+
+    private ForkJoinPool autoTableLayoutPool;
+
+    private ForkJoinPool tableCellLayoutPool;
+
+    private ForkJoinPool lineBreakingPool;
+
+    private ContentWidthCache contentWidthCache;
+
+    private HyphenationCache hyphenationCache;
+
+    private LineBreakCache lineBreakCache;
+
+    private ActiveNodeBeam lineBreakingBeam;
+
+    private ActiveNodeBeam pageBreakingBeam;
+
     private FopFactory(FopFactoryConfig config) {
         this.config = config;
         this.resolver = ResourceResolverFactory.createInternalResourceResolver(config.getBaseURI(),
@@ -182,9 +211,20 @@ public final class FopFactory implements ImageContext {
      */
     public FOUserAgent newFOUserAgent() {
         FOUserAgent userAgent = new FOUserAgent(this, resolver);
+        USER_AGENT_FACTORIES.put(userAgent, this);
         return userAgent;
     }
 
+    /**
+     * Returns the factory which created the given user agent. Layout code uses this to get
+     * at state which is shared by all rendering runs of a factory.
+     * @param userAgent the user agent
+     * @return the factory, or null if it is unknown
+     */
+    public static FopFactory getFactory(FOUserAgent userAgent) {
+        return USER_AGENT_FACTORIES.get(userAgent);
+    }
+
     boolean isComplexScriptFeaturesEnabled() {
         return config.isComplexScriptFeaturesEnabled();
     }
@@ -467,4 +507,175 @@ public final class FopFactory implements ImageContext {
         }
         return hyphenationTreeCache;
     }
+
+    /**
+     * Returns the cache of the hyphenation points of words. The cache is shared by all
+     * rendering runs of this factory and created on first use.
+     * @return the cache, or null if no hyphenation points are to be cached
+     * @see LayoutTuning#getHyphenationCacheSize()
+     */
+    public synchronized HyphenationCache getHyphenationCache() {
+        int size = getLayoutTuning().getHyphenationCacheSize();
+        if (size <= 0) {
+            return null;
+        }
+        if (hyphenationCache == null) {
+            hyphenationCache = new HyphenationCache(size);
+        }
+        return hyphenationCache;
+    }
+
+    /**
+     * Returns the cache of the line breaks of paragraphs. The cache is shared by all
+     * rendering runs of this factory and created on first use.
+     * @return the cache, or null if no line breaks are to be cached
+     * @see LayoutTuning#getLineBreakCacheSize()
+     */
+    public synchronized LineBreakCache getLineBreakCache() {
+        int size = getLayoutTuning().getLineBreakCacheSize();
+        if (size <= 0) {
+            return null;
+        }
+        if (lineBreakCache == null) {
+            lineBreakCache = new LineBreakCache(size);
+        }
+        return lineBreakCache;
+    }
+
+    /**
+     * Returns the layout tuning settings, read from the user configuration.
+     * @return the layout tuning settings
+     */
+    public LayoutTuning getLayoutTuning() {
+        if (layoutTuning == null) {
+            layoutTuning = LayoutTuning.parse(getUserConfig());
+        }
+        return layoutTuning;
+    }
+
+    /**
+     * Returns the thread pool measuring the cells of tables with table-layout="auto". The
+     * pool is shared by all rendering runs of this factory and created on first use.
+     * @return the thread pool, or null if cells are to be measured on the rendering thread
+     * @see LayoutTuning#getAutoTableLayoutParallelism()
+     */
+    public synchronized ForkJoinPool getAutoTableLayoutPool() {
+        int parallelism = getLayoutTuning().getAutoTableLayoutParallelism();
+        if (parallelism <= 1) {
+            return null;
+        }
+        if (autoTableLayoutPool == null) {
+            autoTableLayoutPool = new ForkJoinPool(parallelism);
+        }
+        return autoTableLayoutPool;
+    }
+
+    /**
+     * Returns the thread pool creating the element lists of table cells. The pool is shared
+     * by all rendering runs of this factory and created on first use.
+     * @return the thread pool, or null if cells are to be laid out on the rendering thread
+     * @see LayoutTuning#getTableCellLayoutParallelism()
+     */
+    public synchronized ForkJoinPool getTableCellLayoutPool() {
+        int parallelism = getLayoutTuning().getTableCellLayoutParallelism();
+        if (parallelism <= 1) {
+            return null;
+        }
+        if (tableCellLayoutPool == null) {
+            tableCellLayoutPool = new ForkJoinPool(parallelism);
+        }
+        return tableCellLayoutPool;
+    }
+
+    /**
+     * Returns the thread pool breaking the paragraphs of blocks into lines. The pool is
+     * shared by all rendering runs of this factory and created on first use.
+     * @return the thread pool, or null if paragraphs are to be broken on the rendering thread
+     * @see LayoutTuning#getLineBreakingParallelism()
+     */
+    public synchronized ForkJoinPool getLineBreakingPool() {
+        int parallelism = getLayoutTuning().getLineBreakingParallelism();
+        if (parallelism <= 1) {
+            return null;
+        }
+        if (lineBreakingPool == null) {
+            lineBreakingPool = new ForkJoinPool(parallelism);
+        }
+        return lineBreakingPool;
+    }
+
+    /**
+     * Shuts down the thread pools this factory created for the concurrent layout of tables
+     * and paragraphs, once the rendering runs using them have finished. The worker threads
+     * of the pools are daemon threads, so they do not keep the JVM alive, but they are only
+     * released by this method or once they have been idle for a while. The factory remains
+     * usable; further rendering runs create new pools as needed.
+     */
+    public synchronized void close() {
+        if (autoTableLayoutPool != null) {
+            autoTableLayoutPool.shutdown();
+            autoTableLayoutPool = null;
+        }
+        if (tableCellLayoutPool != null) {
+            tableCellLayoutPool.shutdown();
+            tableCellLayoutPool = null;
+        }
+        if (lineBreakingPool != null) {
+            lineBreakingPool.shutdown();
+            lineBreakingPool = null;
+        }
+    }
+
+    /**
+     * Returns the cache of measured text widths. The cache is shared by all rendering runs
+     * of this factory and created on first use.
+     * @return the cache, or null if no widths are to be cached
+     * @see LayoutTuning#getContentWidthCacheSize()
+     */
+    public synchronized ContentWidthCache getContentWidthCache() {
+        int size = getLayoutTuning().getContentWidthCacheSize();
+        if (size <= 0) {
+            return null;
+        }
+        if (contentWidthCache == null) {
+            contentWidthCache = new ContentWidthCache(size);
+        }
+        return contentWidthCache;
+    }
+
+    /**
+     * Returns the bound on the active nodes of line breaking. The beam, and its counters,
+     * are shared by all rendering runs of this factory and created on first use.
+     * @return the beam, or null if the number of active nodes is not bounded
+     * @see LayoutTuning#getLineBreakingBeamWidth()
+     */
+    public synchronized ActiveNodeBeam getLineBreakingBeam() {
+        int width = getLayoutTuning().getLineBreakingBeamWidth();
+        if (width <= 0) {
+            return null;
+        }
+        if (lineBreakingBeam == null) {
+            lineBreakingBeam = new ActiveNodeBeam(width,
+                    getLayoutTuning().isLineBreakingBeamPerLine());
+        }
+        return lineBreakingBeam;
+    }
+
+    /**
+     * Returns the bound on the active nodes of page breaking. The beam, and its counters,
+     * are shared by all rendering runs of this factory and created on first use.
+     * @return the beam, or null if the number of active nodes is not bounded
+     * @see LayoutTuning#getPageBreakingBeamWidth()
+     */
+    public synchronized ActiveNodeBeam getPageBreakingBeam() {
+        int width = getLayoutTuning().getPageBreakingBeamWidth();
+        if (width <= 0) {
+            return null;
+        }
+        if (pageBreakingBeam == null) {
+            pageBreakingBeam = new ActiveNodeBeam(width,
+                    getLayoutTuning().isPageBreakingBeamPerLine());
+        }
+        return pageBreakingBeam;
+    }
 }
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.apps;
+
+import org.apache.fop.configuration.Configuration;
+
+/**
+ * Settings which trade memory, threads and layout time against each other. They are read
+ * from the <code>layout-tuning</code> element of the user configuration, for example:
+ * <pre>
+ * &lt;fop&gt;
+ *   &lt;layout-tuning&gt;
+ *     &lt;auto-table-layout parallelism="8" sample-rows="200" sample-stride="50"
+ *         streaming="true"/&gt;
+ *     &lt;table-cell-layout parallelism="8"/&gt;
+ *     &lt;content-width-cache size="10000"/&gt;
+ *     &lt;hyphenation-cache size="50000"/&gt;
+ *     &lt;line-break-cache size="1000"/&gt;
+ *     &lt;line-breaking lazy-hyphenation="true" single-pass="true" beam-width="64"
+ *         parallelism="4"/&gt;
+ *     &lt;page-breaking beam-width="256" beam-scope="total"/&gt;
+ *   &lt;/layout-tuning&gt;
+ * &lt;/fop&gt;
+ * </pre>
+ * All settings are optional; by default, layout behaves as in a stock FOP.
+ */
+public final class LayoutTuning {
+
+    /** The settings used if no <code>layout-tuning</code> element is configured. */
+    public static final LayoutTuning DEFAULT = new LayoutTuning(1, 0, 0, false, 1, 0, 0, false,
+            false, 0, true, 0, true, 1, 0);
+
+    private final int autoTableLayoutParallelism;
+    private final int autoTableLayoutSampleRows;
+    private final int autoTableLayoutSampleStride;
+    private final boolean autoTableLayoutStreaming;
+    private final int tableCellLayoutParallelism;
+    private final int contentWidthCacheSize;
+    private final int hyphenationCacheSize;
+    private final boolean lazyHyphenation;
+    private final boolean singlePassLineBreaking;
+    private final int lineBreakingBeamWidth;
+    private final boolean lineBreakingBeamPerLine;
+    private final int pageBreakingBeamWidth;
+    private final boolean pageBreakingBeamPerLine;
+    private final int lineBreakingParallelism;
+    private final int lineBreakCacheSize;
+
+    private LayoutTuning(int autoTableLayoutParallelism, int autoTableLayoutSampleRows,
+            int autoTableLayoutSampleStride, boolean autoTableLayoutStreaming,
+            int tableCellLayoutParallelism, int contentWidthCacheSize,
+            int hyphenationCacheSize, boolean lazyHyphenation, boolean singlePassLineBreaking,
+            int lineBreakingBeamWidth, boolean lineBreakingBeamPerLine,
+            int pageBreakingBeamWidth, boolean pageBreakingBeamPerLine,
+            int lineBreakingParallelism, int lineBreakCacheSize) {
+        this.autoTableLayoutParallelism = autoTableLayoutParallelism;
+        this.autoTableLayoutSampleRows = autoTableLayoutSampleRows;
+        this.autoTableLayoutSampleStride = autoTableLayoutSampleStride;
+        this.autoTableLayoutStreaming = autoTableLayoutStreaming;
+        this.tableCellLayoutParallelism = tableCellLayoutParallelism;
+        this.contentWidthCacheSize = contentWidthCacheSize;
+        this.hyphenationCacheSize = hyphenationCacheSize;
+        this.lazyHyphenation = lazyHyphenation;
+        this.singlePassLineBreaking = singlePassLineBreaking;
+        this.lineBreakingBeamWidth = lineBreakingBeamWidth;
+        this.lineBreakingBeamPerLine = lineBreakingBeamPerLine;
+        this.pageBreakingBeamWidth = pageBreakingBeamWidth;
+        this.pageBreakingBeamPerLine = pageBreakingBeamPerLine;
+        this.lineBreakingParallelism = lineBreakingParallelism;
+        this.lineBreakCacheSize = lineBreakCacheSize;
+    }
+
+    /**
+     * Reads the layout tuning settings from a user configuration.
+     * @param userConfig the user configuration, may be null
+     * @return the settings
+     */
+    public static LayoutTuning parse(Configuration userConfig) {
+        Configuration tuning = userConfig != null
+                ? userConfig.getChild("layout-tuning", false) : null;
+        if (tuning == null) {
+            return DEFAULT;
+        }
+        Configuration autoTableLayout = tuning.getChild("auto-table-layout", true);
+        Configuration lineBreaking = tuning.getChild("line-breaking", true);
+        Configuration pageBreaking = tuning.getChild("page-breaking", true);
+        return new LayoutTuning(
+                autoTableLayout.getAttributeAsInteger("parallelism", 1),
+                autoTableLayout.getAttributeAsInteger("sample-rows", 0),
+                autoTableLayout.getAttributeAsInteger("sample-stride", 0),
+                autoTableLayout.getAttributeAsBoolean("streaming", false),
+                tuning.getChild("table-cell-layout", true).getAttributeAsInteger("parallelism", 1),
+                tuning.getChild("content-width-cache", true).getAttributeAsInteger("size", 0),
+                tuning.getChild("hyphenation-cache", true).getAttributeAsInteger("size", 0),
+                lineBreaking.getAttributeAsBoolean("lazy-hyphenation", false),
+                lineBreaking.getAttributeAsBoolean("single-pass", false),
+                lineBreaking.getAttributeAsInteger("beam-width", 0),
+                !"total".equals(lineBreaking.getAttribute("beam-scope", "line")),
+                pageBreaking.getAttributeAsInteger("beam-width", 0),
+                !"total".equals(pageBreaking.getAttribute("beam-scope", "line")),
+                lineBreaking.getAttributeAsInteger("parallelism", 1),
+                tuning.getChild("line-break-cache", true).getAttributeAsInteger("size", 0));
+    }
+
+    /**
+     * Returns the number of threads measuring the cells of a table with table-layout="auto"
+     * concurrently. A value of 1 or less measures them one after the other on the rendering
+     * thread.
+     * @return the parallelism of the auto table layout
+     */
+    public int getAutoTableLayoutParallelism() {
+        return autoTableLayoutParallelism;
+    }
+
+    /**
+     * Returns the number of leading body rows whose cells are measured to size the columns of
+     * a table with table-layout="auto". The cells of the rows after them are only measured
+     * every {@link #getAutoTableLayoutSampleStride() stride} rows. A value of 0 or less
+     * measures every row. Tables can override this with the
+     * <code>fox:auto-table-layout-sample-rows</code> attribute.
+     * @return the number of body rows measured before sampling starts
+     */
+    public int getAutoTableLayoutSampleRows() {
+        return autoTableLayoutSampleRows;
+    }
+
+    /**
+     * Returns the distance between the sampled body rows after the leading ones. A value of 0
+     * or less measures none of the rows after the leading ones. Tables can override this
+     * with the <code>fox:auto-table-layout-sample-stride</code> attribute.
+     * @return the distance between the sampled body rows
+     * @see #getAutoTableLayoutSampleRows()
+     */
+    public int getAutoTableLayoutSampleStride() {
+        return autoTableLayoutSampleStride;
+    }
+
+    /**
+     * Tells whether tables with table-layout="auto" are laid out with as little retained
+     * state as possible: the element lists created while determining the column widths are
+     * not kept for the final layout, and the layout managers and element lists of body cells
+     * are released as soon as their areas have been added. This trades some layout time for
+     * less heap use per row.
+     * @return true if auto-layout tables are laid out in streaming mode
+     */
+    public boolean isAutoTableLayoutStreaming() {
+        return autoTableLayoutStreaming;
+    }
+
+    /**
+     * Returns the number of threads creating the element lists of the cells of a row group
+     * concurrently, in tables of any layout. Only cells whose content is made of blocks,
+     * inlines, wrappers, basic links and text are laid out concurrently; the others, e.g.
+     * cells with markers, page numbers or footnotes, are laid out on the rendering thread. A
+     * value of 1 or less lays out all cells one after the other on the rendering thread.
+     * @return the parallelism of the table cell layout
+     */
+    public int getTableCellLayoutParallelism() {
+        return tableCellLayoutParallelism;
+    }
+
+    /**
+     * Returns the maximum number of entries of the cache of measured text widths, which is
+     * shared by all rendering runs of a factory. A value of 0 or less disables the cache.
+     * @return the maximum number of cached text widths
+     * @see FopFactory#getContentWidthCache()
+     */
+    public int getContentWidthCacheSize() {
+        return contentWidthCacheSize;
+    }
+
+    /**
+     * Returns the maximum number of entries of the cache of the hyphenation points of words,
+     * which is shared by all rendering runs of a factory. A value of 0 or less disables the
+     * cache.
+     * @return the maximum number of cached words
+     * @see FopFactory#getHyphenationCache()
+     */
+    public int getHyphenationCacheSize() {
+        return hyphenationCacheSize;
+    }
+
+    /**
+     * Tells whether the words of a paragraph are only hyphenated when a line could end within
+     * them, while the paragraph is broken into lines, instead of all before it is. The lines
+     * are the same either way.
+     * @return true if words are hyphenated on demand
+     */
+    public boolean isLazyHyphenation() {
+        return lazyHyphenation;
+    }
+
+    /**
+     * Tells whether justified paragraphs are broken into lines in a single sweep which
+     * searches the breaks with and without hyphenation together, instead of one sweep per
+     * search. The lines are the same either way.
+     * @return true if the line breaking searches of justified paragraphs share one sweep
+     */
+    public boolean isSinglePassLineBreaking() {
+        return singlePassLineBreaking;
+    }
+
+    /**
+     * Returns the maximum number of active nodes line breaking keeps, per line or in total.
+     * The nodes with the most demerits are dropped beyond it, which bounds the cost of
+     * breaking long paragraphs at the risk of less optimal breaks. A value of 0 or less
+     * keeps all active nodes, so the breaks are the optimal ones.
+     * @return the beam width of line breaking
+     * @see FopFactory#getLineBreakingBeam()
+     */
+    public int getLineBreakingBeamWidth() {
+        return lineBreakingBeamWidth;
+    }
+
+    /**
+     * Tells whether the beam width of line breaking applies to the active nodes of each line
+     * (<code>beam-scope="line"</code>, the default) or to all of them
+     * (<code>beam-scope="total"</code>).
+     * @return true if the beam width of line breaking applies per line
+     */
+    public boolean isLineBreakingBeamPerLine() {
+        return lineBreakingBeamPerLine;
+    }
+
+    /**
+     * Returns the maximum number of active nodes page breaking keeps, per page or in total.
+     * A value of 0 or less keeps all active nodes.
+     * @return the beam width of page breaking
+     * @see #getLineBreakingBeamWidth()
+     * @see FopFactory#getPageBreakingBeam()
+     */
+    public int getPageBreakingBeamWidth() {
+        return pageBreakingBeamWidth;
+    }
+
+    /**
+     * Tells whether the beam width of page breaking applies to the active nodes of each page
+     * or to all of them.
+     * @return true if the beam width of page breaking applies per page
+     */
+    public boolean isPageBreakingBeamPerLine() {
+        return pageBreakingBeamPerLine;
+    }
+
+    /**
+     * Returns the number of threads breaking the paragraphs of a block into lines
+     * concurrently. A block is made of several paragraphs if it contains preserved linefeeds
+     * or block-level children. The lines are the same as when the paragraphs are broken one
+     * after the other, except for the order of the overflow events. A value of 1 or less
+     * breaks them one after the other on the rendering thread.
+     * @return the parallelism of line breaking
+     * @see FopFactory#getLineBreakingPool()
+     */
+    public int getLineBreakingParallelism() {
+        return lineBreakingParallelism;
+    }
+
+    /**
+     * Returns the maximum number of entries of the cache of the line breaks of paragraphs,
+     * which is shared by all rendering runs of a factory. Paragraphs with the same elements
+     * and settings, e.g. in static content repeated on every page, are then only broken
+     * once. Only paragraphs of at most
+     * {@link org.apache.fop.layoutmgr.inline.LineBreakCache#MAX_ELEMENT_COUNT} elements
+     * which are not hyphenated lazily are cached. A value of 0 or less disables the cache.
+     * @return the maximum number of cached paragraphs
+     * @see FopFactory#getLineBreakCache()
+     */
+    public int getLineBreakCacheSize() {
+        return lineBreakCacheSize;
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return "LayoutTuning[autoTableLayoutParallelism=" + autoTableLayoutParallelism
+                + ", autoTableLayoutSampleRows=" + autoTableLayoutSampleRows
+                + ", autoTableLayoutSampleStride=" + autoTableLayoutSampleStride
+                + ", autoTableLayoutStreaming=" + autoTableLayoutStreaming
+                + ", tableCellLayoutParallelism=" + tableCellLayoutParallelism
+                + ", contentWidthCacheSize=" + contentWidthCacheSize
+                + ", hyphenationCacheSize=" + hyphenationCacheSize
+                + ", lazyHyphenation=" + lazyHyphenation
+                + ", singlePassLineBreaking=" + singlePassLineBreaking
+                + ", lineBreakingBeamWidth=" + lineBreakingBeamWidth
+                + ", lineBreakingBeamPerLine=" + lineBreakingBeamPerLine
+                + ", pageBreakingBeamWidth=" + pageBreakingBeamWidth
+                + ", pageBreakingBeamPerLine=" + pageBreakingBeamPerLine
+                + ", lineBreakingParallelism=" + lineBreakingParallelism
+                + ", lineBreakCacheSize=" + lineBreakCacheSize + "]";
+    }
+}
@@ -38,6 +38,10 @@ public class PrimaryGridUnit extends GridUnit {
     private TableCellLayoutManager cellLM;
     /** List of Knuth elements representing the contents of the cell. */
     private List elements;
+    /** Knuth elements generated by the current cell LM during the auto-layout width determination. */
+    private List measuredElements;
+    /** The width of the span the measured elements were generated for. */
+    private int measuredIPD = -1;
 
     /** Index of the row where this cell starts. */
     private int rowIndex;
@@ -49,6 +53,8 @@ public class PrimaryGridUnit extends GridUnit {
     private List<GridUnit[]> rows;
     /** The calculated size of the cell's content. (cached value) */
     private int contentLength = -1;
+    /** The number of elements the cached content length was calculated from. */
+    private int contentLengthElementCount = -1;
 
     private boolean isSeparateBorderModel;
     private int halfBorderSeparationBPD;
@@ -113,6 +119,7 @@ public class PrimaryGridUnit extends GridUnit {
      */
     public void setElements(List elements) {
         this.elements = elements;
+        this.contentLength = -1;
     }
 
     /**
@@ -239,9 +246,18 @@ public class PrimaryGridUnit extends GridUnit {
         return getAfterBorderWidth(getCell().getNumberRowsSpanned() - 1, which);
     }
 
-    /** @return the length of the cell content, auto-layout disallows caching */
+    /**
+     * Returns the length of the cell content. The value is cached until the elements are
+     * replaced by {@link #setElements(List)}, which the auto-layout width determination does
+     * before the final layout run. Should elements be added to or removed from the list in
+     * place, the length is calculated again as well.
+     * @return the length of the cell content
+     */
     public int getContentLength() {
-        contentLength = ElementListUtils.calcContentLength(elements);
+        if (contentLength < 0 || elements.size() != contentLengthElementCount) {
+            contentLength = ElementListUtils.calcContentLength(elements);
+            contentLengthElementCount = elements.size();
+        }
         return contentLength;
     }
 
@@ -335,6 +351,49 @@ public class PrimaryGridUnit extends GridUnit {
      */
     public void createCellLM() {
         cellLM = new TableCellLayoutManager(cell, this);
+        measuredElements = null;
+        measuredIPD = -1;
+    }
+
+    /**
+     * Releases the cell LM and the Knuth elements of this grid unit, so that they can be
+     * garbage collected. A new cell LM has to be created before the cell is laid out again.
+     */
+    public void releaseCellLM() {
+        cellLM = null;
+        elements = null;
+        contentLength = -1;
+        measuredElements = null;
+        measuredIPD = -1;
+    }
+
+    /**
+     * Keeps the Knuth elements generated by the current cell LM while determining the
+     * column widths of a table with table-layout="auto", so that the final layout run
+     * can reuse them instead of laying out the cell's content a second time. The
+     * elements are released as soon as a new cell LM is created.
+     *
+     * @param elements the element list generated by the current cell LM
+     * @param ipd the width of the span the elements were generated for
+     */
+    public void setMeasuredElements(List elements, int ipd) {
+        this.measuredElements = elements;
+        this.measuredIPD = ipd;
+    }
+
+    /**
+     * Returns the Knuth elements kept by {@link #setMeasuredElements(List, int)}, if they
+     * were generated for the given width, together with the current cell LM. The elements
+     * are released in any case, so they can be taken only once.
+     *
+     * @param ipd the width of the span the elements are needed for
+     * @return the element list, or null if a new cell LM has to lay out the content
+     */
+    public List takeMeasuredElements(int ipd) {
+        List elems = (measuredIPD == ipd) ? measuredElements : null;
+        measuredElements = null;
+        measuredIPD = -1;
+        return elems;
     }
 
     /**
@@ -27,6 +27,7 @@ import org.apache.commons.logging.LogFactory;
 
 import org.apache.fop.datatypes.LengthBase;
 import org.apache.fop.datatypes.PercentBaseContext;
+import org.apache.fop.fo.FONode;
 import org.apache.fop.fo.FObj;
 import org.apache.fop.fo.flow.ChangeBar;
 
@@ -304,4 +305,28 @@ public abstract class AbstractBaseLayoutManager
         }
         return minimumIPD;
     }
+
+    /**
+     * Returns the lock guarding font access while content is measured with
+     * {@link #getContentWidths(LayoutContext, int)} or broken into elements with
+     * {@link #getNextKnuthElements(LayoutContext, int)}, which may happen concurrently for the
+     * cells of a table. FOP's fonts are not thread-safe: font instances are cached and loaded
+     * lazily, and mapping characters records the glyphs used. The lock also guards the
+     * hyphenation pattern caches and the creation of event producers.
+     * @param node the node whose content is measured
+     * @return the lock, which is the font info of the node's document
+     */
+    protected static Object getFontLock(FONode node) {
+        return node.getFOEventHandler().getFontInfo();
+    }
+
+    /** {@inheritDoc}<br>By default, layout managers cannot measure their content. */
+    public WidthSummary getContentWidths(LayoutContext context, int alignment) {
+        return null;
+    }
+
+    /** {@inheritDoc}<br>By default, layout managers do not keep track of element widths. */
+    public WidthSummary getElementWidths() {
+        return null;
+    }
 }
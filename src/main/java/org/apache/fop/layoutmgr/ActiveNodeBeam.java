@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bound on the number of active nodes a {@link BreakingAlgorithm} keeps, either per line
+ * (or part) or in total. When a new break would exceed it, the active nodes with the most
+ * total demerits are dropped, so the breaks found may differ from the optimal ones; as long
+ * as the bound is not reached, they are the same. The beam counts the searches in which it
+ * dropped nodes, for all the algorithms sharing it. This class is thread-safe.
+ * @see org.apache.fop.apps.LayoutTuning#getLineBreakingBeamWidth()
+ * @see org.apache.fop.apps.LayoutTuning#getPageBreakingBeamWidth()
+ */
+public final class ActiveNodeBeam {
+
+    private final int width;
+    private final boolean perLine;
+
+    private final AtomicLong searchCount = new AtomicLong();
+    private final AtomicLong saturatedSearchCount = new AtomicLong();
+    private final AtomicLong droppedNodeCount = new AtomicLong();
+
+    /**
+     * Creates a new beam.
+     * @param width the maximum number of active nodes, at least 1
+     * @param perLine true if the maximum applies to the active nodes of each line, false if
+     * it applies to all active nodes
+     */
+    public ActiveNodeBeam(int width, boolean perLine) {
+        if (width < 1) {
+            throw new IllegalArgumentException("beam width must be at least 1: " + width);
+        }
+        this.width = width;
+        this.perLine = perLine;
+    }
+
+    /** @return the maximum number of active nodes */
+    public int getWidth() {
+        return width;
+    }
+
+    /** @return true if the maximum applies per line, false if it applies in total */
+    public boolean isPerLine() {
+        return perLine;
+    }
+
+    /** @return the number of searches made with this beam */
+    public long getSearchCount() {
+        return searchCount.get();
+    }
+
+    /** @return the number of searches in which this beam dropped active nodes */
+    public long getSaturatedSearchCount() {
+        return saturatedSearchCount.get();
+    }
+
+    /** @return the number of active nodes this beam dropped */
+    public long getDroppedNodeCount() {
+        return droppedNodeCount.get();
+    }
+
+    /**
+     * Counts a search made with this beam.
+     * @param droppedNodes the number of active nodes dropped in the search
+     */
+    void recordSearch(int droppedNodes) {
+        searchCount.incrementAndGet();
+        if (droppedNodes > 0) {
+            saturatedSearchCount.incrementAndGet();
+            droppedNodeCount.addAndGet(droppedNodes);
+        }
+    }
+
+    /** Resets the counters. */
+    public void resetCounters() {
+        searchCount.set(0);
+        saturatedSearchCount.set(0);
+        droppedNodeCount.set(0);
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return "ActiveNodeBeam[width=" + width + (perLine ? " per line" : " in total")
+                + ", searches=" + searchCount + ", saturated=" + saturatedSearchCount
+                + ", dropped=" + droppedNodeCount + "]";
+    }
+}
@@ -76,9 +76,12 @@ public class BlockLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
         super.initialize();
         org.apache.fop.fo.flow.Block fo = getBlockFO();
         FontInfo fi = fo.getFOEventHandler().getFontInfo();
-        FontTriplet[] fontkeys = fo.getCommonFont().getFontState(fi);
-        Font initFont = fi.getFontInstance(fontkeys[0],
-                getBlockFO().getCommonFont().fontSize.getValue(this));
+        Font initFont;
+        synchronized (getFontLock(fo)) {
+            FontTriplet[] fontkeys = fo.getCommonFont().getFontState(fi);
+            initFont = fi.getFontInstance(fontkeys[0],
+                    getBlockFO().getCommonFont().fontSize.getValue(this));
+        }
         lead = initFont.getAscender();
         follow = -initFont.getDescender();
         //middleShift = -fs.getXHeight() / 2;
@@ -114,6 +117,12 @@ public class BlockLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
                 context, alignment, lmStack, restartPosition, restartAtLM);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public WidthSummary getContentWidths(LayoutContext context, int alignment) {
+        return getChildContentWidths(context, alignment);
+    }
+
     /**
      * Overridden to take into account that the childLM may be the block's
      * {@link LineLayoutManager}.
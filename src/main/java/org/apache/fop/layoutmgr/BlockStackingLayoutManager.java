@@ -203,10 +203,12 @@ public abstract class BlockStackingLayoutManager extends AbstractLayoutManager
         if (ipd < 0 && !context.isChildOfAutoLayoutElement()) {
             //5.3.4, XSL 1.1, Overconstrained Geometry
             log.debug("Adjusting end-indent based on overconstrained geometry rules for " + fobj);
-            BlockLevelEventProducer eventProducer = BlockLevelEventProducer.Provider.get(
-                    getFObj().getUserAgent().getEventBroadcaster());
-            eventProducer.overconstrainedAdjustEndIndent(this,
-                    getFObj().getName(), ipd, getFObj().getLocator());
+            synchronized (getFontLock(fobj)) {
+                BlockLevelEventProducer eventProducer = BlockLevelEventProducer.Provider.get(
+                        getFObj().getUserAgent().getEventBroadcaster());
+                eventProducer.overconstrainedAdjustEndIndent(this,
+                        getFObj().getName(), ipd, getFObj().getLocator());
+            }
             endIndent += ipd;
             ipd = 0;
             //TODO Should we skip layout for a block that has ipd=0?
@@ -226,10 +228,12 @@ public abstract class BlockStackingLayoutManager extends AbstractLayoutManager
         if (ipd < 0) {
             //5.3.4, XSL 1.1, Overconstrained Geometry
             log.debug("Adjusting end-indent based on overconstrained geometry rules for " + fobj);
-            BlockLevelEventProducer eventProducer = BlockLevelEventProducer.Provider.get(
-                    getFObj().getUserAgent().getEventBroadcaster());
-            eventProducer.overconstrainedAdjustEndIndent(this,
-                    getFObj().getName(), ipd, getFObj().getLocator());
+            synchronized (getFontLock(fobj)) {
+                BlockLevelEventProducer eventProducer = BlockLevelEventProducer.Provider.get(
+                        getFObj().getUserAgent().getEventBroadcaster());
+                eventProducer.overconstrainedAdjustEndIndent(this,
+                        getFObj().getName(), ipd, getFObj().getLocator());
+            }
             endIndent += ipd;
         }
         setContentAreaIPD(contentIPD);
@@ -393,6 +397,42 @@ public abstract class BlockStackingLayoutManager extends AbstractLayoutManager
         return elements;
     }
 
+    /**
+     * Measures the content of all child LMs as stacked blocks, see
+     * {@link LayoutManager#getContentWidths(LayoutContext, int)}. Lines are widened by this
+     * LM's start- and end-indent, just like during the auto-layout determination in
+     * {@link #getNextKnuthElements(LayoutContext, int, Stack, Position, LayoutManager)}.
+     * Subclasses whose content is stacked in the block-progression direction can use this
+     * to implement {@link #getContentWidths(LayoutContext, int)}.
+     * @param context the layout context
+     * @param alignment the text alignment
+     * @return the combined width summary, or null if a child LM cannot be measured
+     */
+    protected WidthSummary getChildContentWidths(LayoutContext context, int alignment) {
+        WidthSummary widths = WidthSummary.EMPTY;
+        for (int i = 0;; i++) {
+            LayoutManager currentChildLM;
+            // creating and initializing the child LMs resolves properties of the FO tree,
+            // which is shared with the cells measured concurrently
+            synchronized (getFontLock(fobj)) {
+                if (!createNextChildLMs(i)) {
+                    break;
+                }
+                currentChildLM = getChildLMs().get(i);
+                currentChildLM.initialize();
+            }
+            WidthSummary childWidths = currentChildLM.getContentWidths(context, alignment);
+            if (childWidths == null) {
+                return null;
+            }
+            if (currentChildLM instanceof LineLayoutManager) {
+                childWidths = childWidths.plusMaxWidth(startIndent + endIndent);
+            }
+            widths = widths.stack(childWidths);
+        }
+        return widths;
+    }
+
     /**
      * Creates and initializes a {@link LayoutContext} to pass to the child LM
      * @param context   the parent {@link LayoutContext}
@@ -19,9 +19,15 @@
 
 package org.apache.fop.layoutmgr;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.apache.fop.apps.FOUserAgent;
+import org.apache.fop.apps.FopFactory;
 import org.apache.fop.fo.Constants;
 
 /**
@@ -49,6 +55,16 @@ public abstract class BreakingAlgorithm {
 
     private static final int MAX_RECOVERY_ATTEMPTS = 5;
 
+    private static final int MIN_COLLECTION_SIZE = 256;
+
+    /** The listeners registered for user agents, see {@link #setListener(FOUserAgent,
+     *  BreakingAlgorithmListener)} */
+    private static final Map<FOUserAgent, BreakingAlgorithmListener> LISTENERS
+            = Collections.synchronizedMap(
+                    new WeakHashMap<FOUserAgent, BreakingAlgorithmListener>());
+    /** true once a listener was registered, so that searches look for one */
+    private static volatile boolean listenersRegistered;
+
     // constants identifying a subset of the feasible breaks
     /** All feasible breaks are ok. */
     public static final int ALL_BREAKS = 0;
@@ -192,6 +208,37 @@ public abstract class BreakingAlgorithm {
     private boolean partOverflowRecoveryActivated = true;
     private KnuthNode lastRecovered;
 
+    /** The searches of the last single sweep over a paragraph. */
+    private Search[] searches;
+
+    /** true if the nodes created by this algorithm are reused */
+    private boolean reuseNodes;
+    /** the nodes created while nodes are reused */
+    private KnuthNode[] pooledNodes = new KnuthNode[0];
+    private int pooledNodeCount;
+    /** the pooled nodes which are not in use */
+    private KnuthNode[] freeNodes = new KnuthNode[0];
+    private int freeNodeCount;
+    /** the number of pooled nodes from which their use is checked again, once none is free */
+    private int nextCollectionSize = MIN_COLLECTION_SIZE;
+    private int collectionCount;
+
+    /** the bound on the number of active nodes, or null */
+    private ActiveNodeBeam beam;
+    /** true once the beam was set or looked up */
+    private boolean beamKnown;
+    /** the number of active nodes the beam dropped in the current search */
+    private int droppedNodeCount;
+
+    /** the listener notified of the searches of this algorithm, or null */
+    private BreakingAlgorithmListener listener;
+    /** true once the listener was looked up */
+    private boolean listenerKnown;
+    /** the number of searches this algorithm made */
+    private int searchCount;
+    /** the metrics of the current search, or null if no listener is notified */
+    private BreakingMetrics metrics;
+
     /**
      * Create a new instance.
      *
@@ -226,34 +273,34 @@ public abstract class BreakingAlgorithm {
      */
     public class KnuthNode {
         /** index of the breakpoint represented by this node */
-        public final int position;
+        public int position;
 
         /** number of the line ending at this breakpoint */
-        public final int line;
+        public int line;
 
         /** fitness class of the line ending at this breakpoint. One of 0, 1, 2, 3. */
-        public final int fitness;
+        public int fitness;
 
         /** accumulated width of the KnuthElements up to after this breakpoint. */
-        public final int totalWidth;
+        public int totalWidth;
 
         /** accumulated stretchability of the KnuthElements up to after this breakpoint. */
-        public final int totalStretch;
+        public int totalStretch;
 
         /** accumulated shrinkability of the KnuthElements up to after this breakpoint. */
-        public final int totalShrink;
+        public int totalShrink;
 
         /** adjustment ratio if the line ends at this breakpoint */
-        public final double adjustRatio;
+        public double adjustRatio;
 
         /** available stretch of the line ending at this breakpoint */
-        public final int availableShrink;
+        public int availableShrink;
 
         /** available shrink of the line ending at this breakpoint */
-        public final int availableStretch;
+        public int availableStretch;
 
         /** difference between target and actual line width */
-        public final int difference;
+        public int difference;
 
         /** minimum total demerits up to this breakpoint */
         public double totalDemerits;
@@ -270,6 +317,9 @@ public abstract class BreakingAlgorithm {
          */
         public int fitRecoveryCounter;
 
+        /** the number of the last collection of reusable nodes which found this node in use */
+        private int collection;
+
         /**
          * Construct node.
          * @param position an integer
@@ -289,6 +339,15 @@ public abstract class BreakingAlgorithm {
                          int totalWidth, int totalStretch, int totalShrink,
                          double adjustRatio, int availableShrink, int availableStretch,
                          int difference, double totalDemerits, KnuthNode previous) {
+            set(position, line, fitness, totalWidth, totalStretch, totalShrink,
+                    adjustRatio, availableShrink, availableStretch,
+                    difference, totalDemerits, previous);
+        }
+
+        private void set(int position, int line, int fitness,
+                         int totalWidth, int totalStretch, int totalShrink,
+                         double adjustRatio, int availableShrink, int availableStretch,
+                         int difference, double totalDemerits, KnuthNode previous) {
             this.position = position;
             this.line = line;
             this.fitness = fitness;
@@ -301,6 +360,8 @@ public abstract class BreakingAlgorithm {
             this.difference = difference;
             this.totalDemerits = totalDemerits;
             this.previous = previous;
+            this.next = null;
+            this.fitRecoveryCounter = 0;
         }
 
         /** {@inheritDoc} */
@@ -463,6 +524,16 @@ public abstract class BreakingAlgorithm {
         return lastTooLong;
     }
 
+    /** @return the upper bound of the adjustment ratio of the current search */
+    protected double getThreshold() {
+        return threshold;
+    }
+
+    /** @return true if the current search must find a set of breakpoints */
+    protected boolean isForced() {
+        return force;
+    }
+
     /**
      * Empty method, hook for subclasses. Called before determining the optimal
      * breakpoints corresponding to a given active node.
@@ -522,28 +593,42 @@ public abstract class BreakingAlgorithm {
     public int findBreakingPoints(KnuthSequence par, int startIndex,
                                   double threshold, boolean force,
                                   int allowedBreaks) {
+        BreakingMetrics outerMetrics = metrics;
+        metrics = startMetrics(par, 1, threshold, force, activeNodeCount);
+        if (metrics == null) {
+            return doFindBreakingPoints(par, startIndex, threshold, force, allowedBreaks);
+        }
+        long start = System.nanoTime();
+        int line = 0;
+        try {
+            line = doFindBreakingPoints(par, startIndex, threshold, force, allowedBreaks);
+            return line;
+        } finally {
+            endMetrics(line, start);
+            metrics = outerMetrics;
+        }
+    }
+
+    private int doFindBreakingPoints(KnuthSequence par, int startIndex,
+                                     double threshold, boolean force,
+                                     int allowedBreaks) {
         this.par = par;
         this.threshold = threshold;
         this.force = force;
 
         // initialize the algorithm
         initialize();
+        searches = null;
+        startBeamSearch();
+        if (reuseNodes) {
+            collectNodes(null);
+        }
 
         // previous element in the paragraph is a KnuthBox?
         boolean previousIsBox = false;
 
-        // index of the first KnuthBox in the sequence, in case of non-centered
-        // alignment. For centered alignment, we need to take into account preceding
-        // penalties+glues used for the filler spaces
-        int previousPosition = startIndex;
-        if (alignment != Constants.EN_CENTER) {
-            int firstBoxIndex = par.getFirstBoxIndex(startIndex);
-            previousPosition = (firstBoxIndex >= par.size()) ? startIndex : firstBoxIndex - 1;
-        }
-        previousPosition = (previousPosition < 0) ? 0 : previousPosition;
-
         // create an active node representing the starting point
-        addNode(0, createNode(previousPosition, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, null));
+        addNode(0, createNode(getStartPosition(startIndex), 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, null));
         KnuthNode lastForced = getNode(0);
 
         if (log.isTraceEnabled()) {
@@ -554,18 +639,24 @@ public abstract class BreakingAlgorithm {
         // main loop
         for (int elementIndex = startIndex; elementIndex < par.size(); elementIndex++) {
 
+            if (freeNodeCount == 0 && pooledNodeCount >= nextCollectionSize) {
+                collectNodes(lastForced);
+            }
             previousIsBox = handleElementAt(
                     elementIndex, previousIsBox, allowedBreaks).isBox();
 
             if (activeNodeCount == 0) {
                 if (handlingFloat()) {
+                    endBeamSearch();
                     return handleFloat();
                 }
                 if (getIPDdifference() != 0) {
+                    endBeamSearch();
                     return handleIpdChange();
                 }
                 if (!force) {
                     log.debug("Could not find a set of breaking points " + threshold);
+                    endBeamSearch();
                     return 0;
                 }
 
@@ -591,6 +682,7 @@ public abstract class BreakingAlgorithm {
         }
 
         finish();
+        endBeamSearch();
 
         // there is at least one set of breaking points
         // select one or more active nodes, removing the others from the list
@@ -605,9 +697,274 @@ public abstract class BreakingAlgorithm {
         }
 
         activeLines = null;
+        activeNodeCount = 0;
         return line;
     }
 
+    /**
+     * Returns the position of the node representing the starting point of the paragraph.
+     * @param startIndex index of the Knuth element at which the breaking starts
+     * @return the position of the starting node
+     */
+    private int getStartPosition(int startIndex) {
+        // index of the first KnuthBox in the sequence, in case of non-centered
+        // alignment. For centered alignment, we need to take into account preceding
+        // penalties+glues used for the filler spaces
+        int previousPosition = startIndex;
+        if (alignment != Constants.EN_CENTER) {
+            int firstBoxIndex = par.getFirstBoxIndex(startIndex);
+            previousPosition = (firstBoxIndex >= par.size()) ? startIndex : firstBoxIndex - 1;
+        }
+        return (previousPosition < 0) ? 0 : previousPosition;
+    }
+
+    /**
+     * Finds optimal sets of breakpoints for the given paragraph with several thresholds and
+     * types of breaks, in a single sweep over the paragraph. Each search finds the breakpoints
+     * {@link #findBreakingPoints(KnuthSequence, double, boolean, int)} would find without
+     * forcing, but they are only passed to {@link #updateData1(int, double)} and
+     * {@link #updateData2(KnuthNode, KnuthSequence, int)} by {@link #addBreakingPoints(int)}.
+     * The searches share the paragraph, so {@link #prepareElementAt(int, int)} must not
+     * replace elements; changes of the line width and floats are not handled.
+     *
+     * @param par           the paragraph to break
+     * @param thresholds    upper bound of the adjustment ratio of each search
+     * @param allowedBreaks the type(s) of breaks allowed in each search
+     * @return the number of effective breaks of each search, 0 if it found no set of
+     * breakpoints
+     */
+    public int[] findBreakingPoints(KnuthSequence par, double[] thresholds, int[] allowedBreaks) {
+        double maxThreshold = thresholds[0];
+        for (double threshold : thresholds) {
+            maxThreshold = Math.max(maxThreshold, threshold);
+        }
+        BreakingMetrics outerMetrics = metrics;
+        metrics = startMetrics(par, thresholds.length, maxThreshold, false, 0);
+        if (metrics == null) {
+            return doFindBreakingPoints(par, thresholds, allowedBreaks);
+        }
+        long start = System.nanoTime();
+        int line = 0;
+        try {
+            int[] lines = doFindBreakingPoints(par, thresholds, allowedBreaks);
+            for (int i = 0; i < lines.length && line == 0; i++) {
+                line = lines[i];
+            }
+            return lines;
+        } finally {
+            endMetrics(line, start);
+            metrics = outerMetrics;
+        }
+    }
+
+    private int[] doFindBreakingPoints(KnuthSequence par, double[] thresholds,
+                                       int[] allowedBreaks) {
+        this.par = par;
+        this.force = false;
+        searches = null;
+        if (reuseNodes) {
+            activeLines = null;
+            collectNodes(null);
+        }
+        searches = new Search[thresholds.length];
+        for (int i = 0; i < searches.length; i++) {
+            threshold = thresholds[i];
+            initialize();
+            activeNodeCount = 0;
+            startBeamSearch();
+            addNode(0, createNode(getStartPosition(0), 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, null));
+            searches[i] = new Search(allowedBreaks[i]);
+            saveSearch(searches[i]);
+        }
+
+        boolean previousIsBox = false;
+        int remainingSearches = searches.length;
+        for (int elementIndex = 0;
+                elementIndex < par.size() && remainingSearches > 0; elementIndex++) {
+            if (freeNodeCount == 0 && pooledNodeCount >= nextCollectionSize) {
+                collectNodes(null);
+            }
+            // the searches see the same elements, so they accumulate the same totals
+            int width = totalWidth;
+            int stretch = totalStretch;
+            int shrink = totalShrink;
+            KnuthElement element = null;
+            for (Search search : searches) {
+                if (search.activeLines == null) {
+                    continue;
+                }
+                totalWidth = width;
+                totalStretch = stretch;
+                totalShrink = shrink;
+                loadSearch(search);
+                element = handleElementAt(elementIndex, previousIsBox, search.allowedBreaks);
+                saveSearch(search);
+                if (activeNodeCount == 0) {
+                    log.debug("Could not find a set of breaking points " + threshold);
+                    endBeamSearch();
+                    search.activeLines = null;
+                    remainingSearches--;
+                }
+            }
+            previousIsBox = element.isBox();
+        }
+
+        int[] lines = new int[searches.length];
+        for (int i = 0; i < searches.length; i++) {
+            if (searches[i].activeLines != null) {
+                loadSearch(searches[i]);
+                finish();
+                endBeamSearch();
+                lines[i] = filterActiveNodes();
+                saveSearch(searches[i]);
+            }
+        }
+        activeLines = null;
+        activeNodeCount = 0;
+        return lines;
+    }
+
+    /**
+     * Passes the breakpoints found by a search of the last call to
+     * {@link #findBreakingPoints(KnuthSequence, double[], int[])} to
+     * {@link #updateData1(int, double)} and {@link #updateData2(KnuthNode, KnuthSequence, int)}.
+     * @param search the index of a search which found a set of breakpoints
+     */
+    public void addBreakingPoints(int search) {
+        loadSearch(searches[search]);
+        searches[search] = null;
+        for (int i = startLine; i < endLine; i++) {
+            for (KnuthNode node = getNode(i); node != null; node = node.next) {
+                updateData1(node.line, node.totalDemerits);
+                calculateBreakPoints(node, par, node.line);
+            }
+        }
+        activeLines = null;
+        activeNodeCount = 0;
+    }
+
+    /**
+     * Tells this algorithm whether to reuse the nodes it creates, once they are neither
+     * active nor reachable from an active node or a node the algorithm remembers. Only the
+     * nodes created by {@link #createNode(int, int, int, int, int, int)} and
+     * {@link #createNode(int, int, int, int, int, int, double, int, int, int, double,
+     * BreakingAlgorithm.KnuthNode)} are reused, so subclasses which override them are not
+     * affected. Subclasses which keep references to nodes, other than through the
+     * {@code previous} links of active nodes, must not reuse nodes. The nodes passed to
+     * {@link #updateData2(KnuthNode, KnuthSequence, int)} are valid until the next search.
+     * @param reuseNodes true if nodes are reused
+     */
+    protected void setReuseNodes(boolean reuseNodes) {
+        this.reuseNodes = reuseNodes;
+    }
+
+    private KnuthNode newNode(int position, int line, int fitness,
+                              int totalWidth, int totalStretch, int totalShrink,
+                              double adjustRatio, int availableShrink, int availableStretch,
+                              int difference, double totalDemerits, KnuthNode previous) {
+        if (freeNodeCount > 0) {
+            KnuthNode node = freeNodes[--freeNodeCount];
+            freeNodes[freeNodeCount] = null;
+            node.set(position, line, fitness, totalWidth, totalStretch, totalShrink,
+                    adjustRatio, availableShrink, availableStretch,
+                    difference, totalDemerits, previous);
+            return node;
+        }
+        KnuthNode node = new KnuthNode(position, line, fitness,
+                totalWidth, totalStretch, totalShrink,
+                adjustRatio, availableShrink, availableStretch,
+                difference, totalDemerits, previous);
+        if (reuseNodes) {
+            if (pooledNodeCount == pooledNodes.length) {
+                KnuthNode[] oldNodes = pooledNodes;
+                pooledNodes = new KnuthNode[Math.max(MIN_COLLECTION_SIZE, 2 * pooledNodeCount)];
+                System.arraycopy(oldNodes, 0, pooledNodes, 0, pooledNodeCount);
+            }
+            pooledNodes[pooledNodeCount++] = node;
+        }
+        return node;
+    }
+
+    /**
+     * Finds the pooled nodes which are no longer in use and makes them available for reuse.
+     * Only called between two elements, when no node is held by a local variable other than
+     * the given one.
+     * @param lastForced the node the current search last restarted from, or null
+     */
+    private void collectNodes(KnuthNode lastForced) {
+        collectionCount++;
+        markNodes(activeLines);
+        if (searches != null) {
+            for (Search search : searches) {
+                if (search != null) {
+                    markNodes(search.activeLines);
+                    markNodes(search.lastTooShort);
+                    markNodes(search.lastTooLong);
+                    markNodes(search.lastDeactivated);
+                }
+            }
+        }
+        markNodes(lastTooShort);
+        markNodes(lastTooLong);
+        markNodes(lastDeactivated);
+        markNodes(lastRecovered);
+        markNodes(lastForced);
+
+        if (freeNodes.length < pooledNodeCount) {
+            freeNodes = new KnuthNode[pooledNodes.length];
+        }
+        freeNodeCount = 0;
+        for (int i = 0; i < pooledNodeCount; i++) {
+            if (pooledNodes[i].collection != collectionCount) {
+                pooledNodes[i].previous = null;
+                freeNodes[freeNodeCount++] = pooledNodes[i];
+            }
+        }
+        // check again once the pool has grown to twice the nodes in use
+        nextCollectionSize = Math.max(MIN_COLLECTION_SIZE, 2 * (pooledNodeCount - freeNodeCount));
+    }
+
+    private void markNodes(KnuthNode[] lines) {
+        if (lines != null) {
+            for (int i = 0; i < lines.length; i += 2) {
+                for (KnuthNode node = lines[i]; node != null; node = node.next) {
+                    markNodes(node);
+                }
+            }
+        }
+    }
+
+    private void markNodes(KnuthNode node) {
+        while (node != null && node.collection != collectionCount) {
+            node.collection = collectionCount;
+            node = node.previous;
+        }
+    }
+
+    private void saveSearch(Search search) {
+        search.threshold = threshold;
+        search.activeLines = activeLines;
+        search.activeNodeCount = activeNodeCount;
+        search.startLine = startLine;
+        search.endLine = endLine;
+        search.lastTooShort = lastTooShort;
+        search.lastTooLong = lastTooLong;
+        search.lastDeactivated = lastDeactivated;
+        search.droppedNodeCount = droppedNodeCount;
+    }
+
+    private void loadSearch(Search search) {
+        threshold = search.threshold;
+        activeLines = search.activeLines;
+        activeNodeCount = search.activeNodeCount;
+        startLine = search.startLine;
+        endLine = search.endLine;
+        lastTooShort = search.lastTooShort;
+        lastTooLong = search.lastTooLong;
+        lastDeactivated = search.lastDeactivated;
+        droppedNodeCount = search.droppedNodeCount;
+    }
+
     /**
      * obtain ipd difference
      * @return an integer
@@ -633,6 +990,9 @@ public abstract class BreakingAlgorithm {
      * @return  node corresponding to a breakpoint after the previous "too short" line
      */
     protected KnuthNode recoverFromTooLong(KnuthNode lastTooLong) {
+        if (metrics != null) {
+            metrics.countTooLongRecovery();
+        }
         if (log.isDebugEnabled()) {
             log.debug("Recovering from too long: " + lastTooLong);
         }
@@ -692,7 +1052,7 @@ public abstract class BreakingAlgorithm {
                                    int totalWidth, int totalStretch, int totalShrink,
                                    double adjustRatio, int availableShrink, int availableStretch,
                                    int difference, double totalDemerits, KnuthNode previous) {
-        return new KnuthNode(position, line, fitness,
+        return newNode(position, line, fitness,
                 totalWidth, totalStretch, totalShrink,
                 adjustRatio, availableShrink, availableStretch,
                 difference, totalDemerits, previous);
@@ -715,7 +1075,7 @@ public abstract class BreakingAlgorithm {
      */
     protected KnuthNode createNode(int position, int line, int fitness,
                                    int totalWidth, int totalStretch, int totalShrink) {
-        return new KnuthNode(position, line, fitness,
+        return newNode(position, line, fitness,
                 totalWidth, totalStretch, totalShrink, best.getAdjust(fitness),
                 best.getAvailableShrink(fitness), best.getAvailableStretch(fitness),
                 best.getDifference(fitness), best.getDemerits(fitness),
@@ -751,6 +1111,10 @@ public abstract class BreakingAlgorithm {
     protected final KnuthElement handleElementAt(int position,
                                                  boolean previousIsBox,
                                                  int allowedBreaks) {
+        if (metrics != null) {
+            metrics.countElement();
+        }
+        prepareElementAt(position, allowedBreaks);
         KnuthElement element = getElement(position);
         if (element.isBox()) {
             handleBox((KnuthBox) element);
@@ -765,6 +1129,16 @@ public abstract class BreakingAlgorithm {
         return element;
     }
 
+    /**
+     * Empty method, hook for subclasses. Called before the element at the given position is
+     * handled; subclasses may replace the elements at and after the position, e.g. to
+     * hyphenate a word only when a line could end within it.
+     * @param position the position index of the element in the paragraph
+     * @param allowedBreaks the type(s) of breaks allowed
+     */
+    protected void prepareElementAt(int position, int allowedBreaks) {
+    }
+
     /**
      * Handle a {@link KnuthBox}.
      * <br><em>Note: default implementation just adds the box's width
@@ -845,6 +1219,9 @@ public abstract class BreakingAlgorithm {
      * @return  the new {@code lastForced} node
      */
     protected KnuthNode recoverFromOverflow() {
+        if (metrics != null) {
+            metrics.countOverflowRecovery();
+        }
         KnuthNode lastForced;
         if (isPartOverflowRecoveryActivated()) {
             if (lastRecovered == null) {
@@ -1116,6 +1493,9 @@ public abstract class BreakingAlgorithm {
             log.trace("Removing " + node);
         }
         removeNode(line, node);
+        if (metrics != null) {
+            metrics.countDeactivatedNode();
+        }
         // ... and remember it, if it was a good candidate
         lastDeactivated = compareNodes(lastDeactivated, node);
     }
@@ -1155,6 +1535,7 @@ public abstract class BreakingAlgorithm {
 
         // add nodes to the active nodes list
         double minimumDemerits = best.getMinDemerits() + incompatibleFitnessDemerit;
+        int nodeCount = activeNodeCount;
         for (int i = 0; i <= 3; i++) {
             if (best.notInfiniteDemerits(i) && best.getDemerits(i) <= minimumDemerits) {
                 // the nodes in activeList must be ordered
@@ -1169,6 +1550,156 @@ public abstract class BreakingAlgorithm {
             }
         }
         best.reset();
+        if (beam != null && activeNodeCount > nodeCount) {
+            applyBeam(line + 1);
+        }
+    }
+
+    /**
+     * Registers a listener notified of the searches of the breaking algorithms laying out
+     * the documents of the given user agent. As long as no listener was registered for any
+     * user agent, the searches are not measured at all.
+     * @param userAgent the user agent
+     * @param listener the listener, or null to remove the one registered
+     */
+    public static void setListener(FOUserAgent userAgent, BreakingAlgorithmListener listener) {
+        if (listener != null) {
+            LISTENERS.put(userAgent, listener);
+            listenersRegistered = true;
+        } else {
+            LISTENERS.remove(userAgent);
+        }
+    }
+
+    /**
+     * Returns the listener registered for the given user agent.
+     * @param userAgent the user agent
+     * @return the listener, or null if none is registered
+     */
+    public static BreakingAlgorithmListener getListener(FOUserAgent userAgent) {
+        return listenersRegistered ? LISTENERS.get(userAgent) : null;
+    }
+
+    /**
+     * Returns the layout manager which runs the searches of this algorithm, to which its
+     * metrics are attributed. The default implementation returns null, in which case they
+     * are attributed to the algorithm.
+     * @return the layout manager, or null
+     */
+    protected LayoutManager getLayoutManager() {
+        return null;
+    }
+
+    private BreakingMetrics startMetrics(KnuthSequence par, int searches, double threshold,
+                                         boolean force, int activeNodeBase) {
+        int retryCount = searchCount++;
+        if (!listenersRegistered) {
+            return null;
+        }
+        if (!listenerKnown) {
+            FOUserAgent userAgent = findUserAgent(par);
+            listener = userAgent != null ? getListener(userAgent) : null;
+            listenerKnown = true;
+        }
+        if (listener == null) {
+            return null;
+        }
+        LayoutManager lm = getLayoutManager();
+        return new BreakingMetrics(lm != null ? lm.getClass() : getClass(), getClass(),
+                retryCount, searches, threshold, force, activeNodeBase);
+    }
+
+    private void endMetrics(int line, long start) {
+        metrics.finish(line, System.nanoTime() - start);
+        listener.searchFinished(metrics);
+    }
+
+    /**
+     * Sets the bound on the number of active nodes of the searches of this algorithm. If
+     * none is set, the page breaking beam of the factory which created the user agent of
+     * the paragraph's content, if any, is used.
+     * @param beam the beam, or null to keep all active nodes
+     * @see org.apache.fop.apps.FopFactory#getPageBreakingBeam()
+     */
+    public void setActiveNodeBeam(ActiveNodeBeam beam) {
+        this.beam = beam;
+        this.beamKnown = true;
+    }
+
+    private void startBeamSearch() {
+        if (!beamKnown) {
+            FOUserAgent userAgent = findUserAgent(par);
+            FopFactory factory = userAgent != null ? FopFactory.getFactory(userAgent) : null;
+            beam = factory != null ? factory.getPageBreakingBeam() : null;
+            beamKnown = true;
+        }
+        droppedNodeCount = 0;
+    }
+
+    /**
+     * Returns the user agent of the given paragraph's content, i.e. the one of the layout
+     * manager of this algorithm or, if there is none, of the first element which has one.
+     * @param par the paragraph
+     * @return the user agent, or null if none is found
+     */
+    private FOUserAgent findUserAgent(KnuthSequence par) {
+        LayoutManager lm = getLayoutManager();
+        if (lm != null && lm.getFObj() != null) {
+            return lm.getFObj().getUserAgent();
+        }
+        for (Object element : par) {
+            lm = ((ListElement) element).getLayoutManager();
+            if (lm != null && lm.getFObj() != null) {
+                return lm.getFObj().getUserAgent();
+            }
+        }
+        return null;
+    }
+
+    private void endBeamSearch() {
+        if (beam != null) {
+            beam.recordSearch(droppedNodeCount);
+            if (droppedNodeCount > 0 && log.isDebugEnabled()) {
+                log.debug("Dropped " + droppedNodeCount + " active nodes beyond " + beam);
+            }
+        }
+    }
+
+    /**
+     * Drops the active nodes with the most total demerits, as long as there are more than
+     * the beam allows.
+     * @param line the line active nodes were just added for
+     */
+    private void applyBeam(int line) {
+        int width = beam.getWidth();
+        if (beam.isPerLine()) {
+            int count = 0;
+            for (KnuthNode node = getNode(line); node != null; node = node.next) {
+                count++;
+            }
+            for (; count > width; count--) {
+                dropWorstNode(line, line + 1);
+            }
+        } else {
+            while (activeNodeCount > width) {
+                dropWorstNode(startLine, endLine);
+            }
+        }
+    }
+
+    private void dropWorstNode(int fromLine, int toLine) {
+        KnuthNode worst = null;
+        int worstLine = -1;
+        for (int i = fromLine; i < toLine; i++) {
+            for (KnuthNode node = getNode(i); node != null; node = node.next) {
+                if (worst == null || node.totalDemerits >= worst.totalDemerits) {
+                    worst = node;
+                    worstLine = i;
+                }
+            }
+        }
+        removeNode(worstLine, worst);
+        droppedNodeCount++;
     }
 
     /**
@@ -1336,7 +1867,8 @@ public abstract class BreakingAlgorithm {
 
     /**
      * Add a node at the end of the given line's existing active nodes.
-     * If this is the first node in the line, adjust endLine accordingly.
+     * If this is the first node in the line, adjust startLine and endLine accordingly; lines
+     * between them may have no active node left, e.g. once a beam dropped their nodes.
      * @param line number of the line ending at the node's corresponding breakpoint
      * @param node the active node to add
      */
@@ -1352,10 +1884,14 @@ public abstract class BreakingAlgorithm {
             activeLines[headIdx + 1].next = node;
         } else {
             activeLines[headIdx] = node;
-            endLine = line + 1;
+            startLine = Math.min(startLine, line);
+            endLine = Math.max(endLine, line + 1);
         }
         activeLines[headIdx + 1] = node;
         activeNodeCount++;
+        if (metrics != null) {
+            metrics.countCreatedNode(activeNodeCount);
+        }
     }
 
     /**
@@ -1474,4 +2010,23 @@ public abstract class BreakingAlgorithm {
     protected void disableFloatHandling() {
         throw new IllegalStateException();
     }
+
+    /** The state of one of the searches made in a single sweep over a paragraph. */
+    private static final class Search {
+
+        private final int allowedBreaks;
+        private double threshold;
+        private KnuthNode[] activeLines;
+        private int activeNodeCount;
+        private int startLine;
+        private int endLine;
+        private KnuthNode lastTooShort;
+        private KnuthNode lastTooLong;
+        private KnuthNode lastDeactivated;
+        private int droppedNodeCount;
+
+        Search(int allowedBreaks) {
+            this.allowedBreaks = allowedBreaks;
+        }
+    }
 }
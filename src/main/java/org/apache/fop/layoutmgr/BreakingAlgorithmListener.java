@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr;
+
+/**
+ * Listener notified of every search of the {@link BreakingAlgorithm}s laying out the
+ * documents of a user agent, see
+ * {@link BreakingAlgorithm#setListener(org.apache.fop.apps.FOUserAgent,
+ * BreakingAlgorithmListener)}. Searches may run on several threads at once, so
+ * implementations must be thread-safe.
+ */
+public interface BreakingAlgorithmListener {
+
+    /**
+     * Called when a search for a set of breakpoints has finished, whether it found one or
+     * not.
+     * @param metrics the metrics of the search
+     */
+    void searchFinished(BreakingMetrics metrics);
+}
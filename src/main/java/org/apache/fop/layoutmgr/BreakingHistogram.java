@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Breaking algorithm listener which aggregates the metrics of the searches per type of
+ * layout manager, with a histogram of their wall times in powers of two of microseconds.
+ * This class is thread-safe.
+ */
+public final class BreakingHistogram implements BreakingAlgorithmListener {
+
+    /** The number of buckets of the wall time histograms; the last one is unbounded. */
+    public static final int BUCKET_COUNT = 24;
+
+    private final Map<Class<?>, Statistics> statistics
+            = new LinkedHashMap<Class<?>, Statistics>();
+
+    /** {@inheritDoc} */
+    public synchronized void searchFinished(BreakingMetrics metrics) {
+        Statistics stats = statistics.get(metrics.getLayoutManagerType());
+        if (stats == null) {
+            stats = new Statistics(metrics.getLayoutManagerType());
+            statistics.put(metrics.getLayoutManagerType(), stats);
+        }
+        stats.add(metrics);
+    }
+
+    /**
+     * Returns a snapshot of the statistics of each type of layout manager, in the order
+     * their first search finished.
+     * @return the statistics
+     */
+    public synchronized List<Statistics> getStatistics() {
+        List<Statistics> snapshot = new ArrayList<Statistics>(statistics.size());
+        for (Statistics stats : statistics.values()) {
+            snapshot.add(new Statistics(stats));
+        }
+        return Collections.unmodifiableList(snapshot);
+    }
+
+    /** Removes all statistics. */
+    public synchronized void clear() {
+        statistics.clear();
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        StringBuilder sb = new StringBuilder("BreakingHistogram");
+        for (Statistics stats : getStatistics()) {
+            sb.append("\n  ").append(stats);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the histogram bucket of a wall time: bucket 0 holds the times below 1 &micro;s,
+     * bucket i the times from 2<sup>i-1</sup> &micro;s to below 2<sup>i</sup> &micro;s.
+     * @param wallTime the wall time in nanoseconds
+     * @return the bucket
+     */
+    static int getBucket(long wallTime) {
+        long micros = wallTime / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    /** The aggregated metrics of the searches of one type of layout manager. */
+    public static final class Statistics {
+
+        private final Class<?> layoutManagerType;
+        private long searchCount;
+        private long retryCount;
+        private long forcedCount;
+        private long elementCount;
+        private int maxPeakActiveNodeCount;
+        private long createdNodeCount;
+        private long deactivatedNodeCount;
+        private long tooLongRecoveryCount;
+        private long overflowRecoveryCount;
+        private long failedCount;
+        private long wallTime;
+        private long maxWallTime;
+        private final long[] buckets;
+
+        Statistics(Class<?> layoutManagerType) {
+            this.layoutManagerType = layoutManagerType;
+            this.buckets = new long[BUCKET_COUNT];
+        }
+
+        Statistics(Statistics other) {
+            this.layoutManagerType = other.layoutManagerType;
+            this.searchCount = other.searchCount;
+            this.retryCount = other.retryCount;
+            this.forcedCount = other.forcedCount;
+            this.elementCount = other.elementCount;
+            this.maxPeakActiveNodeCount = other.maxPeakActiveNodeCount;
+            this.createdNodeCount = other.createdNodeCount;
+            this.deactivatedNodeCount = other.deactivatedNodeCount;
+            this.tooLongRecoveryCount = other.tooLongRecoveryCount;
+            this.overflowRecoveryCount = other.overflowRecoveryCount;
+            this.failedCount = other.failedCount;
+            this.wallTime = other.wallTime;
+            this.maxWallTime = other.maxWallTime;
+            this.buckets = other.buckets.clone();
+        }
+
+        void add(BreakingMetrics metrics) {
+            searchCount++;
+            if (metrics.getRetryCount() > 0) {
+                retryCount++;
+            }
+            if (metrics.isForced()) {
+                forcedCount++;
+            }
+            elementCount += metrics.getElementCount();
+            maxPeakActiveNodeCount = Math.max(maxPeakActiveNodeCount,
+                    metrics.getPeakActiveNodeCount());
+            createdNodeCount += metrics.getCreatedNodeCount();
+            deactivatedNodeCount += metrics.getDeactivatedNodeCount();
+            tooLongRecoveryCount += metrics.getTooLongRecoveryCount();
+            overflowRecoveryCount += metrics.getOverflowRecoveryCount();
+            if (metrics.getLineCount() == 0) {
+                failedCount++;
+            }
+            wallTime += metrics.getWallTime();
+            maxWallTime = Math.max(maxWallTime, metrics.getWallTime());
+            buckets[getBucket(metrics.getWallTime())]++;
+        }
+
+        /** @return the type of layout manager, or of algorithm, of the searches */
+        public Class<?> getLayoutManagerType() {
+            return layoutManagerType;
+        }
+
+        /** @return the number of searches */
+        public long getSearchCount() {
+            return searchCount;
+        }
+
+        /** @return the number of searches which were not the first of their algorithm */
+        public long getRetryCount() {
+            return retryCount;
+        }
+
+        /** @return the number of forced searches */
+        public long getForcedCount() {
+            return forcedCount;
+        }
+
+        /** @return the number of searches which found no set of breakpoints */
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        /** @return the total number of elements handled */
+        public long getElementCount() {
+            return elementCount;
+        }
+
+        /** @return the highest peak number of active nodes of a search */
+        public int getMaxPeakActiveNodeCount() {
+            return maxPeakActiveNodeCount;
+        }
+
+        /** @return the total number of active nodes created */
+        public long getCreatedNodeCount() {
+            return createdNodeCount;
+        }
+
+        /** @return the total number of active nodes deactivated */
+        public long getDeactivatedNodeCount() {
+            return deactivatedNodeCount;
+        }
+
+        /** @return the total number of recoveries from a line or part that is too long */
+        public long getTooLongRecoveryCount() {
+            return tooLongRecoveryCount;
+        }
+
+        /** @return the total number of restarts to recover from an overflow */
+        public long getOverflowRecoveryCount() {
+            return overflowRecoveryCount;
+        }
+
+        /** @return the total wall time in nanoseconds */
+        public long getWallTime() {
+            return wallTime;
+        }
+
+        /** @return the longest wall time of a search in nanoseconds */
+        public long getMaxWallTime() {
+            return maxWallTime;
+        }
+
+        /**
+         * Returns the number of searches per wall time bucket, see {@link #BUCKET_COUNT}:
+         * bucket 0 counts the searches which took less than 1 &micro;s, bucket i the ones which
+         * took from 2<sup>i-1</sup> &micro;s to less than 2<sup>i</sup> &micro;s.
+         * @return the number of searches per bucket
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        /** {@inheritDoc} */
+        public String toString() {
+            int last = buckets.length - 1;
+            while (last > 0 && buckets[last] == 0) {
+                last--;
+            }
+            return layoutManagerType.getSimpleName() + ": searches=" + searchCount
+                    + ", retries=" + retryCount + ", forced=" + forcedCount
+                    + ", failed=" + failedCount + ", elements=" + elementCount
+                    + ", maxPeakActiveNodes=" + maxPeakActiveNodeCount
+                    + ", createdNodes=" + createdNodeCount
+                    + ", deactivatedNodes=" + deactivatedNodeCount
+                    + ", tooLongRecoveries=" + tooLongRecoveryCount
+                    + ", overflowRecoveries=" + overflowRecoveryCount
+                    + ", wallTime=" + wallTime / 1000 + "us, maxWallTime="
+                    + maxWallTime / 1000 + "us, buckets="
+                    + Arrays.toString(Arrays.copyOf(buckets, last + 1));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr;
+
+/**
+ * The metrics of one search of a {@link BreakingAlgorithm}, i.e. of one call to one of its
+ * <code>findBreakingPoints</code> methods, passed to a {@link BreakingAlgorithmListener}.
+ */
+public final class BreakingMetrics {
+
+    private final Class<?> layoutManagerType;
+    private final Class<?> algorithmType;
+    private final int retryCount;
+    private final int searchCount;
+    private final double threshold;
+    private final boolean forced;
+    private final int activeNodeBase;
+
+    private int elementCount;
+    private int peakActiveNodeCount;
+    private int createdNodeCount;
+    private int deactivatedNodeCount;
+    private int tooLongRecoveryCount;
+    private int overflowRecoveryCount;
+    private int lineCount;
+    private long wallTime;
+
+    BreakingMetrics(Class<?> layoutManagerType, Class<?> algorithmType, int retryCount,
+            int searchCount, double threshold, boolean forced, int activeNodeBase) {
+        this.layoutManagerType = layoutManagerType;
+        this.algorithmType = algorithmType;
+        this.retryCount = retryCount;
+        this.searchCount = searchCount;
+        this.threshold = threshold;
+        this.forced = forced;
+        this.activeNodeBase = activeNodeBase;
+    }
+
+    /**
+     * Returns the type of the layout manager which ran the search. If the algorithm does
+     * not know it, as for page breaking, this is the type of the algorithm.
+     * @return the type of the layout manager
+     */
+    public Class<?> getLayoutManagerType() {
+        return layoutManagerType;
+    }
+
+    /** @return the type of the breaking algorithm */
+    public Class<?> getAlgorithmType() {
+        return algorithmType;
+    }
+
+    /**
+     * Returns the number of searches the same algorithm made before this one, e.g. the
+     * tries of a paragraph without hyphenation or with a lower threshold.
+     * @return the number of earlier searches of the algorithm
+     */
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * Returns the number of searches made together in a single sweep over the elements,
+     * which is 1 unless they are.
+     * @return the number of searches of the sweep
+     */
+    public int getSearchCount() {
+        return searchCount;
+    }
+
+    /** @return the upper bound of the adjustment ratio, the highest one of a single sweep */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /** @return true if a set of breakpoints had to be found, even if there was none */
+    public boolean isForced() {
+        return forced;
+    }
+
+    /**
+     * Returns the number of elements handled, counting the elements handled again after a
+     * restart and the ones handled by each search of a single sweep.
+     * @return the number of elements handled
+     */
+    public int getElementCount() {
+        return elementCount;
+    }
+
+    /** @return the highest number of active nodes at any point of the search */
+    public int getPeakActiveNodeCount() {
+        return peakActiveNodeCount;
+    }
+
+    /** @return the number of active nodes created */
+    public int getCreatedNodeCount() {
+        return createdNodeCount;
+    }
+
+    /** @return the number of active nodes deactivated */
+    public int getDeactivatedNodeCount() {
+        return deactivatedNodeCount;
+    }
+
+    /** @return the number of recoveries from a line or part that is too long */
+    public int getTooLongRecoveryCount() {
+        return tooLongRecoveryCount;
+    }
+
+    /** @return the number of restarts to recover from an overflow */
+    public int getOverflowRecoveryCount() {
+        return overflowRecoveryCount;
+    }
+
+    /**
+     * Returns the number of lines or parts of the breakpoints found, or 0 if none were
+     * found. For a single sweep, this is the one of the first search which found some.
+     * @return the number of lines or parts
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /** @return the wall time of the search in nanoseconds */
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    void countElement() {
+        elementCount++;
+    }
+
+    /** @param activeNodeCount the number of active nodes after the new one was added */
+    void countCreatedNode(int activeNodeCount) {
+        createdNodeCount++;
+        if (activeNodeCount - activeNodeBase > peakActiveNodeCount) {
+            peakActiveNodeCount = activeNodeCount - activeNodeBase;
+        }
+    }
+
+    void countDeactivatedNode() {
+        deactivatedNodeCount++;
+    }
+
+    void countTooLongRecovery() {
+        tooLongRecoveryCount++;
+    }
+
+    void countOverflowRecovery() {
+        overflowRecoveryCount++;
+    }
+
+    void finish(int lineCount, long wallTime) {
+        this.lineCount = lineCount;
+        this.wallTime = wallTime;
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return "BreakingMetrics[" + layoutManagerType.getSimpleName()
+                + ", retry=" + retryCount + ", searches=" + searchCount
+                + ", threshold=" + threshold + (forced ? " forced" : "")
+                + ", elements=" + elementCount + ", peakActiveNodes=" + peakActiveNodeCount
+                + ", createdNodes=" + createdNodeCount
+                + ", deactivatedNodes=" + deactivatedNodeCount
+                + ", tooLongRecoveries=" + tooLongRecoveryCount
+                + ", overflowRecoveries=" + overflowRecoveryCount
+                + ", lines=" + lineCount + ", wallTime=" + wallTime + "ns]";
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of measured content widths, shared by all rendering runs of a
+ * {@link org.apache.fop.apps.FopFactory}. The keys describe the content and every property
+ * its widths depend on; the least recently used entry is evicted when the cache is full.
+ * This class is thread-safe.
+ * @see org.apache.fop.apps.LayoutTuning#getContentWidthCacheSize()
+ */
+public final class ContentWidthCache {
+
+    private final Map<Object, WidthSummary> entries;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum number of entries
+     */
+    public ContentWidthCache(final int maxSize) {
+        this.entries = new LinkedHashMap<Object, WidthSummary>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<Object, WidthSummary> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the widths cached for the given key.
+     * @param key the key
+     * @return the widths, or null if none are cached
+     */
+    public synchronized WidthSummary get(Object key) {
+        WidthSummary widths = entries.get(key);
+        if (widths != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return widths;
+    }
+
+    /**
+     * Caches the widths of the content described by the given key.
+     * @param key the key
+     * @param widths the widths
+     */
+    public synchronized void put(Object key, WidthSummary widths) {
+        entries.put(key, widths);
+    }
+
+    /** @return the number of cached entries */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** @return the number of lookups which found an entry */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /** @return the number of lookups which did not find an entry */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /** Removes all entries and resets the counters. */
+    public synchronized void clear() {
+        entries.clear();
+        hitCount = 0;
+        missCount = 0;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized String toString() {
+        return "ContentWidthCache[size=" + entries.size() + ", hits=" + hitCount
+                + ", misses=" + missCount + "]";
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the hyphenation points of words, shared by all rendering runs of a
+ * {@link org.apache.fop.apps.FopFactory}. Lookups do not lock; the oldest entry is evicted
+ * when the cache is full. This class is thread-safe.
+ * @see org.apache.fop.apps.LayoutTuning#getHyphenationCacheSize()
+ */
+public final class HyphenationCache {
+
+    /** The hyphenation points cached for a word which cannot be hyphenated. */
+    public static final int[] NO_HYPHENATION = new int[0];
+
+    private final int maxSize;
+    private final ConcurrentHashMap<Key, int[]> entries = new ConcurrentHashMap<Key, int[]>();
+    private final Queue<Key> insertionOrder = new ConcurrentLinkedQueue<Key>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum number of entries
+     */
+    public HyphenationCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the hyphenation points cached for a word. The returned array must not be
+     * modified.
+     * @param language the language
+     * @param country the country, may be null
+     * @param remainCount the minimum number of characters before a hyphenation point
+     * @param pushCount the minimum number of characters after a hyphenation point
+     * @param word the word
+     * @return the hyphenation points, {@link #NO_HYPHENATION} if the word cannot be
+     * hyphenated, or null if none are cached
+     */
+    public int[] get(String language, String country, int remainCount, int pushCount,
+            String word) {
+        int[] points = entries.get(new Key(language, country, remainCount, pushCount, word));
+        if (points != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return points;
+    }
+
+    /**
+     * Caches the hyphenation points of a word.
+     * @param language the language
+     * @param country the country, may be null
+     * @param remainCount the minimum number of characters before a hyphenation point
+     * @param pushCount the minimum number of characters after a hyphenation point
+     * @param word the word
+     * @param points the hyphenation points, or {@link #NO_HYPHENATION}
+     */
+    public void put(String language, String country, int remainCount, int pushCount,
+            String word, int[] points) {
+        Key key = new Key(language, country, remainCount, pushCount, word);
+        if (entries.putIfAbsent(key, points) == null) {
+            insertionOrder.add(key);
+            while (entries.size() > maxSize) {
+                Key eldest = insertionOrder.poll();
+                if (eldest == null) {
+                    break;
+                }
+                entries.remove(eldest);
+            }
+        }
+    }
+
+    /** @return the number of cached entries */
+    public int size() {
+        return entries.size();
+    }
+
+    /** @return the number of lookups which found an entry */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /** @return the number of lookups which did not find an entry */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /** Removes all entries and resets the counters. */
+    public void clear() {
+        entries.clear();
+        insertionOrder.clear();
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return "HyphenationCache[size=" + entries.size() + ", hits=" + hitCount
+                + ", misses=" + missCount + "]";
+    }
+
+    private static final class Key {
+
+        private final String language;
+        private final String country;
+        private final int remainCount;
+        private final int pushCount;
+        private final String word;
+        private final int hash;
+
+        Key(String language, String country, int remainCount, int pushCount, String word) {
+            this.language = language;
+            this.country = country;
+            this.remainCount = remainCount;
+            this.pushCount = pushCount;
+            this.word = word;
+            int h = word.hashCode();
+            h = 31 * h + (language != null ? language.hashCode() : 0);
+            h = 31 * h + (country != null ? country.hashCode() : 0);
+            h = 31 * h + remainCount;
+            this.hash = 31 * h + pushCount;
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return hash;
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && remainCount == other.remainCount
+                    && pushCount == other.pushCount
+                    && word.equals(other.word)
+                    && (language != null ? language.equals(other.language) : other.language == null)
+                    && (country != null ? country.equals(other.country) : other.country == null);
+        }
+    }
+}
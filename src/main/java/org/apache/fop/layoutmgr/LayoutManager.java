@@ -279,4 +279,26 @@ public interface LayoutManager extends PercentBaseContext {
      */
     int getMinimumIPD();
 
+    /**
+     * Measures the inline-progression widths of this layout manager's content without
+     * creating Knuth elements or breaking lines. Used to size the columns of tables with
+     * table-layout="auto". Implementations may create and initialize child layout managers,
+     * so a layout manager that has been measured must not be used for regular layout.
+     * @param context the layout context
+     * @param alignment the text alignment
+     * @return the width summary, or null if this layout manager cannot measure its content
+     * this way, in which case the caller has to fall back to generating the Knuth elements
+     */
+    WidthSummary getContentWidths(LayoutContext context, int alignment);
+
+    /**
+     * Returns the widths of the Knuth elements returned by the last call to
+     * {@link #getNextKnuthElements(LayoutContext, int)}, accumulated while they were created,
+     * so they need not be traversed again to size the columns of tables with
+     * table-layout="auto".
+     * @return the width summary, or null if this layout manager does not keep track of the
+     * widths of its elements
+     */
+    WidthSummary getElementWidths();
+
 }
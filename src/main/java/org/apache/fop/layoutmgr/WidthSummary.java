@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr;
+
+/**
+ * Immutable summary of the inline-progression widths of a layout manager's content, as
+ * needed to size the columns of tables with table-layout="auto". It is produced by
+ * {@link LayoutManager#getContentWidths(LayoutContext, int)} without creating any Knuth
+ * elements or running line breaking.
+ */
+public final class WidthSummary {
+
+    /** Summary for content without any width. */
+    public static final WidthSummary EMPTY = new WidthSummary(0, 0, 0, 0);
+
+    private final int minWidth;
+    private final int maxWidth;
+    private final int longestBox;
+    private final int totalWidth;
+
+    /**
+     * Creates a new width summary.
+     * @param minWidth the minimum width the content can be laid out in without overflowing
+     * @param maxWidth the width the content needs if no optional line breaks are taken; for
+     *                 inline content, this is its total width even across forced line breaks
+     * @param longestBox the width of the widest unbreakable box
+     * @param totalWidth the sum of the widths of all boxes, spaces and penalties
+     */
+    public WidthSummary(int minWidth, int maxWidth, int longestBox, int totalWidth) {
+        this.minWidth = minWidth;
+        this.maxWidth = maxWidth;
+        this.longestBox = longestBox;
+        this.totalWidth = totalWidth;
+    }
+
+    /** @return the minimum width the content can be laid out in without overflowing */
+    public int getMinWidth() {
+        return minWidth;
+    }
+
+    /** @return the width the content needs if no optional line breaks are taken */
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    /** @return the width of the widest unbreakable box */
+    public int getLongestBox() {
+        return longestBox;
+    }
+
+    /** @return the sum of the widths of all boxes, spaces and penalties */
+    public int getTotalWidth() {
+        return totalWidth;
+    }
+
+    /**
+     * Combines this summary with the one of content that follows it on the same line, as
+     * done for the children of a line.
+     * @param other the summary of the following inline content
+     * @return the combined summary
+     */
+    public WidthSummary concat(WidthSummary other) {
+        return new WidthSummary(Math.max(minWidth, other.minWidth),
+                maxWidth + other.maxWidth,
+                Math.max(longestBox, other.longestBox),
+                totalWidth + other.totalWidth);
+    }
+
+    /**
+     * Combines this summary with the one of content that is stacked below it, as done for
+     * the children of a block.
+     * @param other the summary of the stacked content
+     * @return the combined summary
+     */
+    public WidthSummary stack(WidthSummary other) {
+        return new WidthSummary(Math.max(minWidth, other.minWidth),
+                Math.max(maxWidth, other.maxWidth),
+                Math.max(longestBox, other.longestBox),
+                Math.max(totalWidth, other.totalWidth));
+    }
+
+    /**
+     * Adds a constant width, e.g. indents, to both the minimum and the maximum width.
+     * @param width the width to add
+     * @return the widened summary
+     */
+    public WidthSummary plus(int width) {
+        if (width == 0) {
+            return this;
+        }
+        return new WidthSummary(minWidth + width, maxWidth + width, longestBox, totalWidth);
+    }
+
+    /**
+     * Adds a constant width to the maximum width only.
+     * @param width the width to add
+     * @return the widened summary
+     */
+    public WidthSummary plusMaxWidth(int width) {
+        if (width == 0) {
+            return this;
+        }
+        return new WidthSummary(minWidth, maxWidth + width, longestBox, totalWidth);
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return "WidthSummary[min=" + minWidth + ", max=" + maxWidth
+                + ", longestBox=" + longestBox + ", total=" + totalWidth + "]";
+    }
+
+    /**
+     * Mutable helper that accumulates the widths of inline content in logical order. The
+     * minimum width is the width of the widest run of content between two legal breaks,
+     * including the width a break adds at its end, e.g. a hyphen. The maximum width is the
+     * total width, i.e. the sum of the widths of all the Knuth elements of the content,
+     * penalties included and across forced line breaks, just like the element-based
+     * determination of the column widths of auto layout tables.
+     */
+    public static final class Accumulator {
+
+        private int minWidth;
+        private int runWidth;
+        private int longestBox;
+        private int totalWidth;
+
+        /**
+         * Adds an unbreakable box.
+         * @param width the width of the box
+         */
+        public void addBox(int width) {
+            longestBox = Math.max(longestBox, width);
+            addNonBreakingSpace(width);
+        }
+
+        /**
+         * Adds a space which is not a legal break, e.g. a non-breaking space or the letter
+         * spaces inside a word.
+         * @param width the width of the space
+         */
+        public void addNonBreakingSpace(int width) {
+            runWidth += width;
+            minWidth = Math.max(minWidth, runWidth);
+            totalWidth += width;
+        }
+
+        /**
+         * Adds a (possibly breakable) space.
+         * @param width the width of the space
+         */
+        public void addSpace(int width) {
+            runWidth = 0;
+            totalWidth += width;
+        }
+
+        /**
+         * Signals a legal break which is not a space, e.g. after a hyphen.
+         * @param widthIfBreakOccurs the width added at the end of the line if the break is taken
+         */
+        public void addBreak(int widthIfBreakOccurs) {
+            minWidth = Math.max(minWidth, runWidth + widthIfBreakOccurs);
+            runWidth = 0;
+        }
+
+        /**
+         * Adds the width of a penalty, which only counts towards the total width.
+         * @param width the width of the penalty
+         */
+        public void addPenalty(int width) {
+            totalWidth += width;
+        }
+
+        /** Signals a forced line break. */
+        public void endLine() {
+            runWidth = 0;
+        }
+
+        /** @return the summary of the accumulated widths */
+        public WidthSummary toWidthSummary() {
+            return new WidthSummary(minWidth, totalWidth, longestBox, totalWidth);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr.inline;
+
+import java.util.Arrays;
+
+/**
+ * The line breaks found for a paragraph, recorded as the calls the line breaking algorithm
+ * of a {@link LineLayoutManager} made to build its line layout possibilities. Replaying them
+ * for an identical paragraph builds the same possibilities without breaking it again. The
+ * break positions themselves are not recorded, as they belong to a layout manager and
+ * depend on the alignment of the paragraph's content.
+ */
+final class CachedLineBreaks {
+
+    /** a layout possibility: line count; demerits */
+    static final int POSSIBILITY = 0;
+    /** a break: line, position, previous position, difference, available shrink,
+     *  available stretch, total line count; adjustment ratio */
+    static final int BREAK = 1;
+    /** the algorithm is reset */
+    static final int RESET = 2;
+    /** the possibilities are saved */
+    static final int SAVE = 3;
+    /** the saved possibilities are restored */
+    static final int RESTORE = 4;
+
+    private int[] ints = new int[64];
+    private int intCount;
+    private double[] doubles = new double[16];
+    private int doubleCount;
+    private boolean insertsPenalty;
+
+    void addPossibility(int lineCount, double demerits) {
+        addInt(POSSIBILITY);
+        addInt(lineCount);
+        addDouble(demerits);
+    }
+
+    void addBreak(int line, int position, int previousPosition, int difference,
+            int availableShrink, int availableStretch, int total, double adjustRatio) {
+        addInt(BREAK);
+        addInt(line);
+        addInt(position);
+        addInt(previousPosition);
+        addInt(difference);
+        addInt(availableShrink);
+        addInt(availableStretch);
+        addInt(total);
+        addDouble(adjustRatio);
+    }
+
+    void addOperation(int operation) {
+        addInt(operation);
+    }
+
+    /**
+     * Notes that the algorithm inserted an auxiliary penalty at the start of the paragraph.
+     * @param insertsPenalty true if it did
+     */
+    void setInsertsPenalty(boolean insertsPenalty) {
+        this.insertsPenalty = insertsPenalty;
+    }
+
+    /** @return true if the algorithm inserted an auxiliary penalty at the start */
+    boolean insertsPenalty() {
+        return insertsPenalty;
+    }
+
+    /** @return the operations and their integer operands, in the order they were recorded */
+    int[] getInts() {
+        return intCount == ints.length ? ints : Arrays.copyOf(ints, intCount);
+    }
+
+    /** @return the real operands of the operations, in the order they were recorded */
+    double[] getDoubles() {
+        return doubleCount == doubles.length ? doubles : Arrays.copyOf(doubles, doubleCount);
+    }
+
+    /** Releases the unused capacity once the recording is complete. */
+    void trim() {
+        ints = getInts();
+        doubles = getDoubles();
+    }
+
+    private void addInt(int value) {
+        if (intCount == ints.length) {
+            ints = Arrays.copyOf(ints, intCount * 2);
+        }
+        ints[intCount++] = value;
+    }
+
+    private void addDouble(double value) {
+        if (doubleCount == doubles.length) {
+            doubles = Arrays.copyOf(doubles, doubleCount * 2);
+        }
+        doubles[doubleCount++] = value;
+    }
+}
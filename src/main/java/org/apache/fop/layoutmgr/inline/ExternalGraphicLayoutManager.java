@@ -19,10 +19,16 @@
 
 package org.apache.fop.layoutmgr.inline;
 
+import java.awt.Dimension;
+
 import org.apache.fop.area.Area;
 import org.apache.fop.area.inline.Image;
 import org.apache.fop.area.inline.InlineViewport;
 import org.apache.fop.fo.flow.ExternalGraphic;
+import org.apache.fop.fo.properties.LengthRangeProperty;
+import org.apache.fop.fo.properties.Property;
+import org.apache.fop.layoutmgr.LayoutContext;
+import org.apache.fop.layoutmgr.WidthSummary;
 
 
 /**
@@ -59,5 +65,33 @@ public class ExternalGraphicLayoutManager extends AbstractGraphicsLayoutManager
         }
     }
 
-}
+    /**
+     * {@inheritDoc}<br>The image is sized just like for the viewport area, but neither the area
+     * nor any Knuth elements are created. The minimum width is the width of the placed image,
+     * the maximum width also includes the viewport's border and padding. An image whose
+     * inline-progression-dimension is relative to the width of its containing block cannot be
+     * measured this way, since that width is only known once the cell's lines are created.
+     * The properties are resolved under the font lock, as cells may be measured concurrently.
+     */
+    public WidthSummary getContentWidths(LayoutContext context, int alignment) {
+        synchronized (getFontLock(fobj)) {
+            ExternalGraphic fo = (ExternalGraphic) fobj;
+            LengthRangeProperty ipd = fo.getInlineProgressionDimension();
+            if (isRelative(ipd.getMinimum(this)) || isRelative(ipd.getOptimum(this))
+                    || isRelative(ipd.getMaximum(this))) {
+                return null;
+            }
+            Dimension intrinsicSize = new Dimension(fo.getIntrinsicWidth(), fo.getIntrinsicHeight());
+            ImageLayout imageLayout = new ImageLayout(fo, this, intrinsicSize);
+            int placementWidth = imageLayout.getPlacement().width;
+            int viewportWidth = imageLayout.getViewportSize().width
+                    + fo.getCommonBorderPaddingBackground().getIPPaddingAndBorder(false, this);
+            return new WidthSummary(placementWidth, viewportWidth, viewportWidth, viewportWidth);
+        }
+    }
 
+    private static boolean isRelative(Property length) {
+        return !length.isAuto() && length.getLength() != null
+                && !length.getLength().isAbsolute();
+    }
+}
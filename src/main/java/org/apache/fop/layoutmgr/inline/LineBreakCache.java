@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr.inline;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the line breaks of paragraphs, shared by all rendering runs of a
+ * {@link org.apache.fop.apps.FopFactory}. The keys hold the widths, stretch, shrink and
+ * penalties of a paragraph's elements and every setting its breaks depend on, so that
+ * paragraphs repeated on every page, e.g. in static content, are only broken once. The
+ * least recently used entry is evicted when the cache is full. This class is thread-safe.
+ * @see org.apache.fop.apps.LayoutTuning#getLineBreakCacheSize()
+ */
+public final class LineBreakCache {
+
+    /** The maximum number of elements of a paragraph whose line breaks are cached. */
+    public static final int MAX_ELEMENT_COUNT = 1000;
+
+    private final Map<Key, CachedLineBreaks> entries;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum number of entries
+     */
+    public LineBreakCache(final int maxSize) {
+        this.entries = new LinkedHashMap<Key, CachedLineBreaks>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedLineBreaks> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the line breaks cached for the given key.
+     * @param key the key, which must not be modified afterwards
+     * @return the line breaks, or null if none are cached
+     */
+    synchronized CachedLineBreaks get(int[] key) {
+        CachedLineBreaks breaks = entries.get(new Key(key));
+        if (breaks != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return breaks;
+    }
+
+    /**
+     * Caches the line breaks of the paragraph described by the given key.
+     * @param key the key, which must not be modified afterwards
+     * @param breaks the line breaks
+     */
+    synchronized void put(int[] key, CachedLineBreaks breaks) {
+        entries.put(new Key(key), breaks);
+    }
+
+    /** @return the number of cached entries */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** @return the number of lookups which found an entry */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /** @return the number of lookups which did not find an entry */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /** Removes all entries and resets the counters. */
+    public synchronized void clear() {
+        entries.clear();
+        hitCount = 0;
+        missCount = 0;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized String toString() {
+        return "LineBreakCache[size=" + entries.size() + ", hits=" + hitCount
+                + ", misses=" + missCount + "]";
+    }
+
+    private static final class Key {
+
+        private final int[] values;
+        private final int hash;
+
+        Key(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return hash;
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && Arrays.equals(values, other.values);
+        }
+    }
+}
@@ -20,15 +20,22 @@
 package org.apache.fop.layoutmgr.inline;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.apache.fop.apps.FOUserAgent;
+import org.apache.fop.apps.FopFactory;
 import org.apache.fop.area.Area;
 import org.apache.fop.area.LineArea;
 import org.apache.fop.area.Trait;
@@ -54,6 +61,7 @@ import org.apache.fop.layoutmgr.ElementListObserver;
 import org.apache.fop.layoutmgr.FloatContentLayoutManager;
 import org.apache.fop.layoutmgr.FootenoteUtil;
 import org.apache.fop.layoutmgr.FootnoteBodyLayoutManager;
+import org.apache.fop.layoutmgr.HyphenationCache;
 import org.apache.fop.layoutmgr.InlineKnuthSequence;
 import org.apache.fop.layoutmgr.Keep;
 import org.apache.fop.layoutmgr.KnuthBlockBox;
@@ -65,6 +73,7 @@ import org.apache.fop.layoutmgr.KnuthPossPosIter;
 import org.apache.fop.layoutmgr.KnuthSequence;
 import org.apache.fop.layoutmgr.LayoutContext;
 import org.apache.fop.layoutmgr.LayoutManager;
+import org.apache.fop.layoutmgr.LayoutTasks;
 import org.apache.fop.layoutmgr.LeafPosition;
 import org.apache.fop.layoutmgr.ListElement;
 import org.apache.fop.layoutmgr.NonLeafPosition;
@@ -72,6 +81,8 @@ import org.apache.fop.layoutmgr.Position;
 import org.apache.fop.layoutmgr.PositionIterator;
 import org.apache.fop.layoutmgr.SpaceSpecifier;
 import org.apache.fop.layoutmgr.UnresolvedListElementWithLength;
+import org.apache.fop.layoutmgr.WidthSummary;
+import org.apache.fop.layoutmgr.table.TableCellLayoutManager;
 import org.apache.fop.traits.MinOptMax;
 
 /**
@@ -101,6 +112,9 @@ public class LineLayoutManager extends InlineStackingLayoutManager
      */
     private static Log log = LogFactory.getLog(LineLayoutManager.class);
 
+    /** number of tasks per thread the paragraphs of a block are broken in, if concurrently */
+    private static final int TASKS_PER_THREAD = 4;
+
     private final Block fobj;
     private boolean isFirstInBlock;
 
@@ -169,7 +183,6 @@ public class LineLayoutManager extends InlineStackingLayoutManager
 
     private List<KnuthSequence> knuthParagraphs;
 
-    private LineLayoutPossibilities lineLayouts;
     private LineLayoutPossibilities[] lineLayoutsList;
     private MinOptMax ipd = null;
     /**
@@ -320,6 +333,15 @@ public class LineLayoutManager extends InlineStackingLayoutManager
         private final int lead;
         private final int follow;
         private static final double MAX_DEMERITS = 10e6;
+        /** the layout possibilities found, see updateData1 and updateData2 */
+        private LineLayoutPossibilities lineLayouts = new LineLayoutPossibilities();
+        /** hyphenates the words of the paragraph, if words are hyphenated lazily */
+        private LazyHyphenation lazyHyphenation;
+        /** the height of the line of the last break position made */
+        private int lastLineHeight;
+        private boolean lastLineHeightKnown;
+        /** records the line breaks found, if they are to be cached */
+        private CachedLineBreaks recording;
 
         public LineBreakingAlgorithm(int pageAlign, int textAlign, int textAlignLast, int indent, int fillerWidth,
                                      int lh, int ld, int fl, boolean first, int maxFlagCount, LineLayoutManager llm) {
@@ -331,10 +353,15 @@ public class LineLayoutManager extends InlineStackingLayoutManager
             follow = fl;
             thisLLM = llm;
             activePossibility = -1;
+            // the line break positions only copy the values of the nodes
+            setReuseNodes(true);
         }
 
         @Override
         public void updateData1(int lineCount, double demerits) {
+            if (recording != null) {
+                recording.addPossibility(lineCount, demerits);
+            }
             lineLayouts.addPossibility(lineCount, demerits);
             if (log.isTraceEnabled()) {
                 log.trace("Layout possibility in " + lineCount + " lines; break at position:");
@@ -345,6 +372,12 @@ public class LineLayoutManager extends InlineStackingLayoutManager
         public void updateData2(KnuthNode bestActiveNode,
                                 KnuthSequence par,
                                 int total) {
+            if (recording != null) {
+                recording.addBreak(bestActiveNode.line, bestActiveNode.position,
+                        bestActiveNode.line > 1 ? bestActiveNode.previous.position : -1,
+                        bestActiveNode.difference, bestActiveNode.availableShrink,
+                        bestActiveNode.availableStretch, total, bestActiveNode.adjustRatio);
+            }
             // compute indent and adjustment ratio, according to
             // the value of text-align and text-align-last
             int startIndent;
@@ -400,17 +433,22 @@ public class LineLayoutManager extends InlineStackingLayoutManager
             int lack = difference + bestActiveNode.availableShrink;
             // if this LLM is nested inside a BlockContainerLayoutManager that is constraining
             // the available width and thus responsible for the overflow then we do not issue
-            // warning event here and instead let the BCLM handle that at a later stage
-            if (lack < 0 && !handleOverflow(-lack)) {
-                InlineLevelEventProducer eventProducer
-                        = InlineLevelEventProducer.Provider.get(
-                        getFObj().getUserAgent().getEventBroadcaster());
-                if (curChildLM.getFObj() == null) {
-                    eventProducer.lineOverflows(this, getFObj().getName(), bestActiveNode.line,
-                            -lack, getFObj().getLocator());
-                } else {
-                    eventProducer.lineOverflows(this, curChildLM.getFObj().getName(), bestActiveNode.line,
-                            -lack, curChildLM.getFObj().getLocator());
+            // warning event here and instead let the BCLM handle that at a later stage;
+            // the lock also guards the BCLM, as paragraphs may be broken concurrently
+            if (lack < 0) {
+                synchronized (getFontLock(fobj)) {
+                    if (!handleOverflow(-lack)) {
+                        InlineLevelEventProducer eventProducer
+                                = InlineLevelEventProducer.Provider.get(
+                                getFObj().getUserAgent().getEventBroadcaster());
+                        if (curChildLM.getFObj() == null) {
+                            eventProducer.lineOverflows(this, getFObj().getName(),
+                                    bestActiveNode.line, -lack, getFObj().getLocator());
+                        } else {
+                            eventProducer.lineOverflows(this, curChildLM.getFObj().getName(),
+                                    bestActiveNode.line, -lack, curChildLM.getFObj().getLocator());
+                        }
+                    }
                 }
             }
 
@@ -429,9 +467,136 @@ public class LineLayoutManager extends InlineStackingLayoutManager
         /* reset activePossibility, as if breakpoints have not yet been computed
          */
         public void resetAlgorithm() {
+            if (recording != null) {
+                recording.addOperation(CachedLineBreaks.RESET);
+            }
             activePossibility = -1;
         }
 
+        /** Saves the layout possibilities found so far, see updateData1 and updateData2. */
+        private void savePossibilities() {
+            if (recording != null) {
+                recording.addOperation(CachedLineBreaks.SAVE);
+            }
+            lineLayouts.savePossibilities(false);
+        }
+
+        /** Restores the saved layout possibilities, keeping the better ones. */
+        private void restorePossibilities() {
+            if (recording != null) {
+                recording.addOperation(CachedLineBreaks.RESTORE);
+            }
+            lineLayouts.restorePossibilities();
+        }
+
+        /**
+         * Builds the layout possibilities from the recorded line breaks of an identical
+         * paragraph, as if the paragraph was broken again.
+         * @param breaks the recorded line breaks
+         * @param par the paragraph
+         */
+        private void replay(CachedLineBreaks breaks, Paragraph par) {
+            if (breaks.insertsPenalty()) {
+                @SuppressWarnings("unchecked")
+                List<ListElement> elements = par;
+                elements.add(0, KnuthPenalty.DUMMY_ZERO_PENALTY);
+            }
+            int[] ints = breaks.getInts();
+            double[] doubles = breaks.getDoubles();
+            int d = 0;
+            int i = 0;
+            while (i < ints.length) {
+                switch (ints[i++]) {
+                    case CachedLineBreaks.POSSIBILITY:
+                        updateData1(ints[i++], doubles[d++]);
+                        break;
+                    case CachedLineBreaks.BREAK:
+                        int line = ints[i];
+                        // only the position of the previous node is used
+                        KnuthNode previous = line > 1
+                                ? new KnuthNode(ints[i + 2], line - 1, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+                                        null)
+                                : null;
+                        KnuthNode node = new KnuthNode(ints[i + 1], line, 0, 0, 0, 0,
+                                doubles[d++], ints[i + 4], ints[i + 5], ints[i + 3], 0, previous);
+                        updateData2(node, par, ints[i + 6]);
+                        i += 7;
+                        break;
+                    case CachedLineBreaks.RESET:
+                        resetAlgorithm();
+                        break;
+                    case CachedLineBreaks.SAVE:
+                        savePossibilities();
+                        break;
+                    case CachedLineBreaks.RESTORE:
+                        restorePossibilities();
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown operation: " + ints[i - 1]);
+                }
+            }
+        }
+
+        @Override
+        protected void prepareElementAt(int position, int allowedBreaks) {
+            if (lazyHyphenation != null && allowedBreaks == ALL_BREAKS
+                    && lazyHyphenation.isUnhyphenatedWord(position)) {
+                int end = lazyHyphenation.getWordEnd(position);
+                if (isForced() || mayEndLineWithin(position, end)) {
+                    lazyHyphenation.hyphenateWord(position, end);
+                }
+            }
+        }
+
+        /**
+         * Tells whether a line starting at one of the active nodes could end at a hyphenation
+         * point of the word made of the given elements. The widths of the hyphenated word are
+         * only bounded, so that no word is missed within which a line could end.
+         * @param start the index of the first element of the word
+         * @param end the index after the last element of the word
+         * @return false if no line can end within the word
+         */
+        private boolean mayEndLineWithin(int start, int end) {
+            int wordWidth = 0;
+            int wordStretch = 0;
+            int wordShrink = 0;
+            int overhang = 0;
+            for (int i = start; i < end; i++) {
+                KnuthElement element = getElement(i);
+                if (element.isBox()) {
+                    wordWidth += element.getWidth();
+                    if (!element.isAuxiliary()) {
+                        overhang = Math.max(overhang,
+                                lazyHyphenation.getHyphenationOverhang(element));
+                    }
+                } else if (element.isGlue()) {
+                    wordWidth += element.getWidth();
+                    wordStretch += element.getStretch();
+                    wordShrink += element.getShrink();
+                }
+            }
+            // a part of the hyphenated word can be wider than the whole word, by less than
+            // the word's width, because of negative kerning or letter spacing
+            int margin = Math.abs(wordWidth) + overhang;
+            int lineWidth = getLineWidth();
+            for (int line = startLine; line < endLine; line++) {
+                for (KnuthNode node = getNode(line); node != null; node = node.next) {
+                    int minDifference = lineWidth
+                            - (totalWidth + wordWidth + margin - node.totalWidth);
+                    int maxDifference = lineWidth - (totalWidth - margin - node.totalWidth);
+                    // the hyphen of unjustified text follows a glue with some stretch
+                    int maxStretch = totalStretch + wordStretch + 3 * DEFAULT_SPACE_WIDTH
+                            - node.totalStretch;
+                    int maxShrink = totalShrink + wordShrink - node.totalShrink;
+                    if ((minDifference <= 0 || minDifference <= getThreshold() * maxStretch)
+                            && (maxDifference >= 0 || -maxDifference <= maxShrink)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
         private LineBreakPosition makeLineBreakPosition(KnuthSequence par, int firstElementIndex, int lastElementIndex,
                                                         int availableShrink, int availableStretch, int difference, double ratio,
                                                         int startIndent, int endIndent) {
@@ -494,7 +659,8 @@ public class LineLayoutManager extends InlineStackingLayoutManager
                 }
             }
 
-            constantLineHeight = lineLead + lineFollow;
+            lastLineHeight = lineLead + lineFollow;
+            lastLineHeightKnown = true;
 
             if (isZeroHeightLine) {
                 return new LineBreakPosition(thisLLM,
@@ -515,6 +681,11 @@ public class LineLayoutManager extends InlineStackingLayoutManager
             }
         }
 
+        @Override
+        protected LayoutManager getLayoutManager() {
+            return thisLLM;
+        }
+
         @Override
         protected int filterActiveNodes() {
             KnuthNode bestActiveNode = null;
@@ -613,12 +784,16 @@ public class LineLayoutManager extends InlineStackingLayoutManager
     /** {@inheritDoc} */
     @Override
     public List getNextKnuthElements(LayoutContext context, int alignment) {
+        Object fontLock = getFontLock(fobj);
         if (alignmentContext == null) {
-            FontInfo fi = fobj.getFOEventHandler().getFontInfo();
-            FontTriplet[] fontkeys = fobj.getCommonFont().getFontState(fi);
-            Font fs = fi.getFontInstance(fontkeys[0], fobj.getCommonFont().fontSize.getValue(this));
-            alignmentContext = new AlignmentContext(fs, lineHeight.getValue(this),
-                    context.getWritingMode());
+            synchronized (fontLock) {
+                FontInfo fi = fobj.getFOEventHandler().getFontInfo();
+                FontTriplet[] fontkeys = fobj.getCommonFont().getFontState(fi);
+                Font fs = fi.getFontInstance(fontkeys[0],
+                        fobj.getCommonFont().fontSize.getValue(this));
+                alignmentContext = new AlignmentContext(fs, lineHeight.getValue(this),
+                        context.getWritingMode());
+            }
         }
         context.setAlignmentContext(alignmentContext);
         ipd = MinOptMax.getInstance(context.getRefIPD());
@@ -628,8 +803,11 @@ public class LineLayoutManager extends InlineStackingLayoutManager
             // it's the first time this method is called
             knuthParagraphs = new ArrayList<KnuthSequence>();
 
-            // here starts Knuth's algorithm
-            collectInlineKnuthElements(context);
+            // here starts Knuth's algorithm; the inline LMs access the fonts throughout,
+            // whereas the line breaking below only works on the elements
+            synchronized (fontLock) {
+                collectInlineKnuthElements(context);
+            }
         } else {
             // this method has been called before
             // all line breaks are already calculated
@@ -683,6 +861,26 @@ public class LineLayoutManager extends InlineStackingLayoutManager
         return createLineBreaks(context.getBPAlignment(), context);
     }
 
+    /**
+     * {@inheritDoc}<br>The widths of the inline children are concatenated; no paragraphs
+     * are collected and no line breaks are computed.
+     */
+    @Override
+    public WidthSummary getContentWidths(LayoutContext context, int alignment) {
+        WidthSummary widths = WidthSummary.EMPTY;
+        for (LayoutManager curLM : getChildLMs()) {
+            synchronized (getFontLock(fobj)) {
+                curLM.initialize();
+            }
+            WidthSummary childWidths = curLM.getContentWidths(context, effectiveAlignment);
+            if (childWidths == null) {
+                return null;
+            }
+            widths = widths.concat(childWidths);
+        }
+        return widths;
+    }
+
     /**
      * Phase 1 of Knuth algorithm: Collect all inline Knuth elements before determining line breaks.
      * @param context the LayoutContext
@@ -736,12 +934,24 @@ public class LineLayoutManager extends InlineStackingLayoutManager
                 }
             }
 
+            // get to know the width of the contained elements, if the child LM kept track
+            // of them while creating them
+            boolean traverseElements = false;
+            if (context.isInAutoLayoutDeterminationMode()) {
+                WidthSummary elementWidths = curLM.getElementWidths();
+                if (elementWidths != null) {
+                    minimumIPD = Math.max(minimumIPD, elementWidths.getMinWidth());
+                    maxSumIPD += elementWidths.getTotalWidth();
+                } else {
+                    traverseElements = true;
+                }
+            }
+
             // loop over the KnuthSequences (and single KnuthElements) in returnedList
             for (Object inlineElement : inlineElements) {
                 KnuthSequence sequence = (KnuthSequence) inlineElement;
 
-                // get to know the width of the contained elements
-                if (context.isInAutoLayoutDeterminationMode()) {
+                if (traverseElements) {
                     final ListIterator i = sequence.listIterator();
 
                     while (i.hasNext()) {
@@ -750,7 +960,6 @@ public class LineLayoutManager extends InlineStackingLayoutManager
                             final KnuthElement element = (KnuthElement) object;
                             // retrieve minimum width for this lineLM along the way
                             if (element instanceof KnuthBox) {
-                                // TODO: this is already calculated during the collection of the childLM's elements
                                 minimumIPD = Math.max(minimumIPD, element.getWidth());
                             }
                             maxSumIPD += element.getWidth();
@@ -839,6 +1048,13 @@ public class LineLayoutManager extends InlineStackingLayoutManager
          */
         if (ipd.getMax() < maxSumIPD && context.isInAutoLayoutDeterminationMode()) {
             ipd = MinOptMax.getInstance(minimumIPD, maxSumIPD, maxSumIPD);
+            // the elements differ from those for the cell's actual width
+            for (LayoutManager lm = getParent(); lm != null; lm = lm.getParent()) {
+                if (lm instanceof TableCellLayoutManager) {
+                    ((TableCellLayoutManager) lm).setWidenedForAutoLayout();
+                    break;
+                }
+            }
 
             final MinOptMax stackLimitBP = context.getStackLimitBP();
             int max = stackLimitBP.getMax();
@@ -859,21 +1075,30 @@ public class LineLayoutManager extends InlineStackingLayoutManager
      * @return a list of Knuth elements representing broken lines
      */
     private List<ListElement> createLineBreaks(int alignment, LayoutContext context) {
+        if (lineLayoutsList != null && isLazyHyphenation()) {
+            // the paragraphs are broken again, e.g. due to changing page-ipd
+            restartLazyHyphenation();
+        }
         // find the optimal line breaking points for each paragraph
-        Iterator<KnuthSequence> paragraphsIterator = knuthParagraphs.iterator();
         lineLayoutsList = new LineLayoutPossibilities[knuthParagraphs.size()];
-        LineLayoutPossibilities llPoss;
-        for (int i = 0; paragraphsIterator.hasNext(); i++) {
-            KnuthSequence seq = paragraphsIterator.next();
-            if (!seq.isInlineSequence()) {
-                // This set of line layout possibilities does not matter;
-                // we only need an entry in lineLayoutsList.
-                llPoss = new LineLayoutPossibilities();
-            } else {
-                llPoss = findOptimalBreakingPoints(alignment, (Paragraph) seq,
-                        !paragraphsIterator.hasNext());
+        ForkJoinPool pool = getLineBreakingPool();
+        if (pool != null && getInlineSequenceCount() > 1) {
+            findOptimalBreakingPointsConcurrently(alignment, pool);
+        } else {
+            Iterator<KnuthSequence> paragraphsIterator = knuthParagraphs.iterator();
+            LineLayoutPossibilities llPoss;
+            for (int i = 0; paragraphsIterator.hasNext(); i++) {
+                KnuthSequence seq = paragraphsIterator.next();
+                if (!seq.isInlineSequence()) {
+                    // This set of line layout possibilities does not matter;
+                    // we only need an entry in lineLayoutsList.
+                    llPoss = new LineLayoutPossibilities();
+                } else {
+                    llPoss = findOptimalBreakingPoints(alignment, (Paragraph) seq,
+                            !paragraphsIterator.hasNext());
+                }
+                lineLayoutsList[i] = llPoss;
             }
-            lineLayoutsList[i] = llPoss;
         }
 
         setFinished(true);
@@ -891,9 +1116,109 @@ public class LineLayoutManager extends InlineStackingLayoutManager
      */
     private LineLayoutPossibilities findOptimalBreakingPoints(int alignment, Paragraph currPar,
                                                               boolean isLastPar) {
-        // use the member lineLayouts, which is read by LineBreakingAlgorithm.updateData1 and 2
-        lineLayouts = new LineLayoutPossibilities();
-        double maxAdjustment = 1;
+        LineBreakingAlgorithm alg = createLineBreakingAlgorithm(alignment, currPar);
+        boolean canWrap = (wrapOption != EN_NO_WRAP);
+        boolean canHyphenate = (canWrap && hyphenationProperties.hyphenate.getEnum() == EN_TRUE);
+
+        // find hyphenation points, if allowed and not yet done
+        if (canHyphenate && !hyphenationPerformed) {
+            if (isLazyHyphenation()) {
+                // done again if the method is called twice (e.g. due to changing page-ipd):
+                // only the words lines could end within at the previous width are
+                // hyphenated, and the text layout managers skip the ones which are
+                findBreakingPointsWithLazyHyphenation(alg, alignment, currPar);
+                return getLineLayouts(alg);
+            }
+            // make sure findHyphenationPoints() is bypassed if
+            // the method is called twice (e.g. due to changing page-ipd)
+            hyphenationPerformed = isLastPar;
+            synchronized (getFontLock(fobj)) {
+                findHyphenationPoints(currPar);
+            }
+        }
+
+        findCachedBreakingPoints(alg, alignment, currPar, canWrap, canHyphenate);
+        return getLineLayouts(alg);
+    }
+
+    /**
+     * Finds the optimal linebreaks for each paragraph like
+     * {@link #findOptimalBreakingPoints(int, Paragraph, boolean)}, breaking the paragraphs
+     * concurrently on the given thread pool. Their words are hyphenated first, in order, on
+     * this thread, as a word may span several paragraphs; lazy hyphenation does not apply.
+     * @param alignment alignment of the paragraphs
+     * @param pool the thread pool
+     */
+    private void findOptimalBreakingPointsConcurrently(final int alignment, ForkJoinPool pool) {
+        final int n = knuthParagraphs.size();
+        final boolean canWrap = (wrapOption != EN_NO_WRAP);
+        final boolean canHyphenate = (canWrap
+                && hyphenationProperties.hyphenate.getEnum() == EN_TRUE);
+        if (canHyphenate && !hyphenationPerformed) {
+            synchronized (getFontLock(fobj)) {
+                for (KnuthSequence seq : knuthParagraphs) {
+                    if (seq.isInlineSequence()) {
+                        findHyphenationPoints((Paragraph) seq);
+                    }
+                }
+            }
+            hyphenationPerformed = knuthParagraphs.get(n - 1).isInlineSequence();
+        }
+
+        // each task breaks consecutive paragraphs with about the same number of elements
+        int elementCount = 0;
+        for (KnuthSequence seq : knuthParagraphs) {
+            if (seq.isInlineSequence()) {
+                elementCount += seq.size();
+            }
+        }
+        int taskSize = elementCount / (pool.getParallelism() * TASKS_PER_THREAD) + 1;
+        final LineBreakingAlgorithm[] algs = new LineBreakingAlgorithm[n];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        int start = 0;
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            KnuthSequence seq = knuthParagraphs.get(i);
+            if (seq.isInlineSequence()) {
+                size += seq.size();
+            }
+            if (size >= taskSize || i == n - 1) {
+                final int from = start;
+                final int to = i + 1;
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        for (int j = from; j < to; j++) {
+                            KnuthSequence sequence = knuthParagraphs.get(j);
+                            if (sequence.isInlineSequence()) {
+                                Paragraph par = (Paragraph) sequence;
+                                algs[j] = createLineBreakingAlgorithm(alignment, par);
+                                findCachedBreakingPoints(algs[j], alignment, par, canWrap,
+                                        canHyphenate);
+                            }
+                        }
+                        return null;
+                    }
+                });
+                start = to;
+                size = 0;
+            }
+        }
+        LayoutTasks.invokeAll(pool, tasks, "breaking the paragraphs into lines");
+
+        for (int i = 0; i < n; i++) {
+            // the paragraphs which are not inline sequences only need an entry
+            lineLayoutsList[i] = algs[i] != null
+                    ? getLineLayouts(algs[i]) : new LineLayoutPossibilities();
+        }
+    }
+
+    /**
+     * Creates the line breaking algorithm for a paragraph.
+     * @param alignment alignment of the paragraph
+     * @param currPar the Paragraph
+     * @return the line breaking algorithm
+     */
+    private LineBreakingAlgorithm createLineBreakingAlgorithm(int alignment, Paragraph currPar) {
         LineBreakingAlgorithm alg = new LineBreakingAlgorithm(alignment,
                 textAlignment, textAlignmentLast,
                 textIndent.getValue(this), currPar.lineFiller.getOpt(),
@@ -903,16 +1228,140 @@ public class LineLayoutManager extends InlineStackingLayoutManager
                         ? 0 : hyphenationLadderCount.getValue(),
                 this);
         alg.setConstantLineWidth(ipd.getOpt());
-        boolean canWrap = (wrapOption != EN_NO_WRAP);
-        boolean canHyphenate = (canWrap && hyphenationProperties.hyphenate.getEnum() == EN_TRUE);
+        FopFactory factory = FopFactory.getFactory(getFObj().getUserAgent());
+        alg.setActiveNodeBeam(factory != null ? factory.getLineBreakingBeam() : null);
+        return alg;
+    }
 
-        // find hyphenation points, if allowed and not yet done
-        if (canHyphenate && !hyphenationPerformed) {
-            // make sure findHyphenationPoints() is bypassed if
-            // the method is called twice (e.g. due to changing page-ipd)
-            hyphenationPerformed = isLastPar;
-            findHyphenationPoints(currPar);
+    /**
+     * Returns the line layout possibilities found by an algorithm, and takes over the line
+     * height of the last break position it made as the constant line height. The paragraphs
+     * must be passed in order.
+     * @param alg the line breaking algorithm
+     * @return the line layout possibilities
+     */
+    private LineLayoutPossibilities getLineLayouts(LineBreakingAlgorithm alg) {
+        if (alg.lastLineHeightKnown) {
+            constantLineHeight = alg.lastLineHeight;
+        }
+        return alg.lineLayouts;
+    }
+
+    private int getInlineSequenceCount() {
+        int count = 0;
+        for (KnuthSequence seq : knuthParagraphs) {
+            if (seq.isInlineSequence()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private ForkJoinPool getLineBreakingPool() {
+        FopFactory factory = FopFactory.getFactory(getFObj().getUserAgent());
+        return factory != null ? factory.getLineBreakingPool() : null;
+    }
+
+    /**
+     * Finds the optimal linebreaks for a paragraph like
+     * {@link #findBreakingPoints(LineLayoutManager.LineBreakingAlgorithm, int, Paragraph,
+     * boolean, boolean)}, or replays the ones cached for an identical paragraph.
+     * @param alg the line breaking algorithm
+     * @param alignment alignment of the paragraph
+     * @param currPar the Paragraph for which the linebreaks are found
+     * @param canWrap true if lines can wrap
+     * @param canHyphenate true if the words of the paragraph are hyphenated
+     */
+    private void findCachedBreakingPoints(LineBreakingAlgorithm alg, int alignment,
+                                          Paragraph currPar, boolean canWrap,
+                                          boolean canHyphenate) {
+        LineBreakCache cache = getLineBreakCache();
+        if (cache == null || currPar.size() > LineBreakCache.MAX_ELEMENT_COUNT) {
+            findBreakingPoints(alg, alignment, currPar, canWrap, canHyphenate);
+            return;
+        }
+        int[] key = createLineBreakKey(alignment, currPar, canWrap, canHyphenate);
+        CachedLineBreaks breaks = cache.get(key);
+        if (breaks != null) {
+            alg.replay(breaks, currPar);
+            return;
+        }
+        breaks = new CachedLineBreaks();
+        int size = currPar.size();
+        alg.recording = breaks;
+        findBreakingPoints(alg, alignment, currPar, canWrap, canHyphenate);
+        alg.recording = null;
+        // the algorithm may have inserted a penalty at the start of the paragraph
+        boolean insertsPenalty = currPar.size() == size + 1
+                && currPar.get(0) == KnuthPenalty.DUMMY_ZERO_PENALTY;
+        if (currPar.size() == size || insertsPenalty) {
+            breaks.setInsertsPenalty(insertsPenalty);
+            breaks.trim();
+            cache.put(key, breaks);
+        }
+    }
+
+    /**
+     * Creates the key of the line breaks of a paragraph, made of everything they depend on:
+     * the line width, the alignment, the breaks allowed and the elements.
+     * @param alignment alignment of the paragraph
+     * @param par the paragraph
+     * @param canWrap true if lines can wrap
+     * @param canHyphenate true if the words of the paragraph are hyphenated
+     * @return the key
+     */
+    private int[] createLineBreakKey(int alignment, Paragraph par, boolean canWrap,
+                                     boolean canHyphenate) {
+        int[] key = new int[6 + 4 * par.size()];
+        int n = 0;
+        key[n++] = ipd.getOpt();
+        key[n++] = alignment;
+        key[n++] = textAlignment;
+        key[n++] = textAlignmentLast;
+        key[n++] = hyphenationLadderCount.getEnum() == EN_NO_LIMIT
+                ? 0 : hyphenationLadderCount.getValue();
+        key[n++] = (canWrap ? 1 : 0) | (canHyphenate ? 2 : 0);
+        for (Object o : par) {
+            KnuthElement element = (KnuthElement) o;
+            if (element.isBox()) {
+                key[n++] = 0;
+                key[n++] = element.getWidth();
+            } else if (element.isGlue()) {
+                key[n++] = 1;
+                key[n++] = element.getWidth();
+                key[n++] = element.getStretch();
+                key[n++] = element.getShrink();
+            } else {
+                key[n++] = ((KnuthPenalty) element).isPenaltyFlagged() ? 3 : 2;
+                key[n++] = element.getWidth();
+                key[n++] = element.getPenalty();
+            }
         }
+        return Arrays.copyOf(key, n);
+    }
+
+    private LineBreakCache getLineBreakCache() {
+        FopFactory factory = FopFactory.getFactory(getFObj().getUserAgent());
+        return factory != null ? factory.getLineBreakCache() : null;
+    }
+
+    /**
+     * Finds the optimal linebreaks for a paragraph, trying again with hyphenation or a higher
+     * threshold if needed.
+     * @param alg the line breaking algorithm
+     * @param alignment alignment of the paragraph
+     * @param currPar the Paragraph for which the linebreaks are found
+     * @param canWrap true if lines can wrap
+     * @param canHyphenate true if the words of the paragraph are hyphenated
+     */
+    private void findBreakingPoints(LineBreakingAlgorithm alg, int alignment, Paragraph currPar,
+                                    boolean canWrap, boolean canHyphenate) {
+        if (alignment == EN_JUSTIFY && isSinglePassLineBreaking()) {
+            findJustifiedBreakingPoints(alg, currPar, canWrap, canHyphenate);
+            return;
+        }
+
+        double maxAdjustment = 1;
 
         // first try: do not consider hyphenation points as legal breaks
         int allowedBreaks = (canWrap ? BreakingAlgorithm.NO_FLAGGED_PENALTIES
@@ -923,7 +1372,7 @@ public class LineLayoutManager extends InlineStackingLayoutManager
             // if the first try found a set of breaking points, save them
             if (breakingPoints > 0) {
                 alg.resetAlgorithm();
-                lineLayouts.savePossibilities(false);
+                alg.savePossibilities();
             } else {
                 // the first try failed
                 log.debug("No set of breaking points found with maxAdjustment = " + maxAdjustment);
@@ -954,10 +1403,150 @@ public class LineLayoutManager extends InlineStackingLayoutManager
             }
 
             // use non-hyphenated breaks, when possible
-            lineLayouts.restorePossibilities();
+            alg.restorePossibilities();
+        }
+    }
+
+    /**
+     * Finds the optimal linebreaks for a justified paragraph like
+     * {@link #findBreakingPoints(LineLayoutManager.LineBreakingAlgorithm, int, Paragraph,
+     * boolean, boolean)}, which always makes the first two tries for justified text: here
+     * they are made in a single sweep over the paragraph.
+     * @param alg the line breaking algorithm
+     * @param currPar the Paragraph for which the linebreaks are found
+     * @param canWrap true if lines can wrap
+     * @param canHyphenate true if the words of the paragraph are hyphenated
+     */
+    private void findJustifiedBreakingPoints(LineBreakingAlgorithm alg, Paragraph currPar,
+                                             boolean canWrap, boolean canHyphenate) {
+        // first try: do not consider hyphenation points as legal breaks
+        int allowedBreaks = (canWrap ? BreakingAlgorithm.NO_FLAGGED_PENALTIES
+                : BreakingAlgorithm.ONLY_FORCED_BREAKS);
+        // second try: consider every hyphenation point as a legal break, if possible, or use
+        // a higher threshold
+        boolean hyphenate = canHyphenate && allowedBreaks != BreakingAlgorithm.ONLY_FORCED_BREAKS;
+        double maxAdjustment = hyphenate ? 1 : 5;
+        int[] breakingPoints = alg.findBreakingPoints(currPar, new double[] {1, maxAdjustment},
+                new int[] {allowedBreaks, hyphenate ? BreakingAlgorithm.ALL_BREAKS : allowedBreaks});
+
+        if (breakingPoints[0] > 0) {
+            // save the breaking points of the first try
+            alg.addBreakingPoints(0);
+            alg.resetAlgorithm();
+            alg.savePossibilities();
+        } else {
+            log.debug("No set of breaking points found with maxAdjustment = 1");
+        }
+
+        if (breakingPoints[1] > 0) {
+            alg.addBreakingPoints(1);
+        } else {
+            // the second try failed too, try with a huge threshold
+            // and force the algorithm to find a set of breaking points
+            if (log.isDebugEnabled()) {
+                log.debug("No set of breaking points found with maxAdjustment = "
+                        + maxAdjustment + (canHyphenate ? " and hyphenation" : ""));
+            }
+            alg.findBreakingPoints(currPar, 20, true,
+                    hyphenate ? BreakingAlgorithm.ALL_BREAKS : allowedBreaks);
+        }
+
+        // use non-hyphenated breaks, when possible
+        alg.restorePossibilities();
+    }
+
+    private boolean isSinglePassLineBreaking() {
+        FopFactory factory = FopFactory.getFactory(getFObj().getUserAgent());
+        return factory != null && factory.getLayoutTuning().isSinglePassLineBreaking();
+    }
+
+    private boolean isLazyHyphenation() {
+        FopFactory factory = FopFactory.getFactory(getFObj().getUserAgent());
+        return factory != null && factory.getLayoutTuning().isLazyHyphenation();
+    }
+
+    /**
+     * Prepares the text layout managers to hyphenate the paragraphs again when they are broken
+     * again: lazy hyphenation replaced their elements when it applied the changes.
+     */
+    private void restartLazyHyphenation() {
+        for (KnuthSequence seq : knuthParagraphs) {
+            for (Object element : seq) {
+                Position pos = ((ListElement) element).getPosition();
+                if (pos != null && getLeafPosition(pos).getLM() instanceof TextLayoutManager) {
+                    ((TextLayoutManager) getLeafPosition(pos).getLM()).resetChangeOffset();
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the optimal linebreaks for a paragraph whose words are hyphenated while it is
+     * broken, see {@link LazyHyphenation}. The breaks are the ones found once all the words
+     * are hyphenated: the same tries are made, except that the try considering hyphenation
+     * points comes first for justified text, so that the words it hyphenates are part of the
+     * paragraph the try without them breaks.
+     * @param alg the line breaking algorithm
+     * @param alignment alignment of the paragraph
+     * @param currPar the Paragraph for which the linebreaks are found
+     */
+    private void findBreakingPointsWithLazyHyphenation(LineBreakingAlgorithm alg, int alignment,
+                                                       Paragraph currPar) {
+        LazyHyphenation lazy = new LazyHyphenation(currPar);
+        alg.lazyHyphenation = lazy;
+        try {
+            lazy.hyphenateWordsBeforeBreakOpportunities();
+            if (alignment != EN_JUSTIFY) {
+                if (alg.findBreakingPoints(currPar, 1, false,
+                        BreakingAlgorithm.NO_FLAGGED_PENALTIES) == 0) {
+                    log.debug("No set of breaking points found with maxAdjustment = 1");
+                    if (alg.findBreakingPoints(currPar, 1, false,
+                            BreakingAlgorithm.ALL_BREAKS) == 0) {
+                        log.debug("No set of breaking points found with maxAdjustment = 1"
+                                + " and hyphenation");
+                        lazy.hyphenateRemainingWords();
+                        alg.findBreakingPoints(currPar, 20, true, BreakingAlgorithm.ALL_BREAKS);
+                    }
+                    alg.lineLayouts.restorePossibilities();
+                }
+            } else {
+                RecordedLineLayouts hyphenatedLayouts = new RecordedLineLayouts();
+                alg.lineLayouts = hyphenatedLayouts;
+                int hyphenatedBreaks = alg.findBreakingPoints(currPar, 1, false,
+                        BreakingAlgorithm.ALL_BREAKS);
+                if (hyphenatedBreaks == 0) {
+                    lazy.hyphenateRemainingWords();
+                }
+                alg.resetAlgorithm();
+                alg.lineLayouts = new LineLayoutPossibilities();
+                if (alg.findBreakingPoints(currPar, 1, false,
+                        BreakingAlgorithm.NO_FLAGGED_PENALTIES) > 0) {
+                    alg.resetAlgorithm();
+                    alg.lineLayouts.savePossibilities(false);
+                }
+                if (hyphenatedBreaks > 0) {
+                    hyphenatedLayouts.addTo(alg.lineLayouts);
+                } else {
+                    log.debug("No set of breaking points found with maxAdjustment = 1"
+                            + " and hyphenation");
+                    alg.findBreakingPoints(currPar, 20, true, BreakingAlgorithm.ALL_BREAKS);
+                }
+                alg.lineLayouts.restorePossibilities();
+            }
+        } finally {
+            alg.lazyHyphenation = null;
         }
 
-        return lineLayouts;
+        int size = currPar.size();
+        lazy.applyChanges();
+        if (currPar.size() != size) {
+            // the elements returned by the layout managers differ from the ones the breaks were
+            // found for: break the paragraph again, as it is now hyphenated
+            log.debug("Elements changed after lazy hyphenation, breaking the paragraph again");
+            alg.lineLayouts = new LineLayoutPossibilities();
+            alg.resetAlgorithm();
+            findBreakingPoints(alg, alignment, currPar, true, true);
+        }
     }
 
     /**
@@ -1325,7 +1914,8 @@ public class LineLayoutManager extends InlineStackingLayoutManager
         int boxCount;
         // number of auxiliary KnuthElements between KnuthBoxes
         int auxCount;
-        StringBuffer sbChars;
+        // the characters of the current word, reused for every word
+        StringBuilder sbChars = new StringBuilder();
 
         // find all hyphenation points
         while (currParIterator.hasNext()) {
@@ -1347,7 +1937,7 @@ public class LineLayoutManager extends InlineStackingLayoutManager
             if (firstElement.isBox() && !firstElement.isAuxiliary()) {
                 boxCount = 1;
                 auxCount = 0;
-                sbChars = new StringBuffer();
+                sbChars.setLength(0);
                 sbChars.append(currLM.getWordChars(firstElement.getPosition()));
                 // look if next elements are boxes too
                 while (currParIterator.hasNext()) {
@@ -1379,7 +1969,7 @@ public class LineLayoutManager extends InlineStackingLayoutManager
                     log.trace(" Word to hyphenate: " + sbChars.toString());
                 }
                 // find hyphenation points
-                HyphContext hc = getHyphenContext(sbChars);
+                HyphContext hc = getHyphenContext(sbChars.toString());
                 // ask each LM to hyphenate its word fragment
                 if (hc != null) {
                     KnuthElement element = null;
@@ -1444,6 +2034,259 @@ public class LineLayoutManager extends InlineStackingLayoutManager
         updateList.clear();
     }
 
+    private static Position getLeafPosition(Position pos) {
+        while (pos.getPosition() != null) {
+            pos = pos.getPosition();
+        }
+        return pos;
+    }
+
+    /**
+     * Hyphenates the words of a paragraph while it is broken into lines, and only the words a
+     * line could end within. The elements of a word are replaced by the elements of its
+     * fragments when it is hyphenated, and the layout managers apply the changes once the
+     * paragraph is broken, as they do after {@link #findHyphenationPoints(Paragraph)}.
+     */
+    private final class LazyHyphenation {
+
+        private final Paragraph par;
+        /** the first boxes of the words which were hyphenated, and of their fragments */
+        private final Set<KnuthElement> hyphenatedBoxes
+                = Collections.newSetFromMap(new IdentityHashMap<KnuthElement, Boolean>());
+        /** the first boxes of words which directly follow the fragments of a hyphenated word */
+        private final Set<KnuthElement> wordStarts
+                = Collections.newSetFromMap(new IdentityHashMap<KnuthElement, Boolean>());
+        private final StringBuilder wordChars = new StringBuilder();
+
+        private LazyHyphenation(Paragraph par) {
+            this.par = par;
+        }
+
+        /**
+         * @param index the index of an element
+         * @return true if the element starts a word which was not hyphenated yet
+         */
+        boolean isUnhyphenatedWord(int index) {
+            KnuthElement element = (KnuthElement) par.get(index);
+            if (!element.isBox() || element.isAuxiliary()
+                    || !(element.getLayoutManager() instanceof InlineLevelLayoutManager)
+                    || index < par.ignoreAtStart || hyphenatedBoxes.contains(element)) {
+                return false;
+            }
+            if (wordStarts.contains(element)) {
+                return true;
+            }
+            // words are made of boxes and auxiliary elements
+            for (int i = index - 1; i >= par.ignoreAtStart; i--) {
+                KnuthElement previous = (KnuthElement) par.get(i);
+                if (!previous.isAuxiliary()) {
+                    if (previous.isBox()) {
+                        return false;
+                    }
+                    break;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @param start the index of the first box of a word
+         * @return the index after the last element of the word
+         */
+        int getWordEnd(int start) {
+            int end = start + 1;
+            while (end < par.size()) {
+                KnuthElement element = (KnuthElement) par.get(end);
+                if (!element.isBox() && !element.isAuxiliary()) {
+                    break;
+                }
+                end++;
+            }
+            return end;
+        }
+
+        /**
+         * @param box a box of a word
+         * @return the most by which a line ending within the box is wider than the part of
+         * the box before the break
+         */
+        int getHyphenationOverhang(KnuthElement box) {
+            LayoutManager lm = getLeafPosition(box.getPosition()).getLM();
+            return lm instanceof TextLayoutManager
+                    ? ((TextLayoutManager) lm).getHyphenationOverhang() : 0;
+        }
+
+        /**
+         * Hyphenates a word, and replaces the elements of the fragments of the word which
+         * were split.
+         * @param start the index of the first box of the word
+         * @param end the index after the last element of the word
+         */
+        void hyphenateWord(int start, int end) {
+            hyphenatedBoxes.add((KnuthElement) par.get(start));
+            synchronized (getFontLock(fobj)) {
+                wordChars.setLength(0);
+                for (int i = start; i < end; i++) {
+                    KnuthElement element = (KnuthElement) par.get(i);
+                    if (element.isBox() && !element.isAuxiliary()) {
+                        wordChars.append(((InlineLevelLayoutManager) element.getLayoutManager())
+                                .getWordChars(element.getPosition()));
+                    }
+                }
+                HyphContext hc = getHyphenContext(wordChars.toString());
+                if (hc == null) {
+                    return;
+                }
+                for (int i = start; i < end; i++) {
+                    KnuthElement element = (KnuthElement) par.get(i);
+                    if (!element.isBox() || element.isAuxiliary()) {
+                        continue;
+                    }
+                    Position pos = element.getPosition();
+                    Position leafPos = getLeafPosition(pos);
+                    TextLayoutManager textLM = leafPos.getLM() instanceof TextLayoutManager
+                            ? (TextLayoutManager) leafPos.getLM() : null;
+                    int firstChange = textLM != null ? textLM.getPendingChangeCount() : 0;
+                    ((InlineLevelLayoutManager) element.getLayoutManager()).hyphenate(pos, hc);
+                    if (textLM != null && textLM.getPendingChangeCount() > firstChange) {
+                        int count = textLM.getWordFragmentElementCount((LeafPosition) leafPos,
+                                effectiveAlignment);
+                        List<KnuthElement> fragments = textLM.getPendingElements(firstChange,
+                                effectiveAlignment);
+                        for (KnuthElement fragment : fragments) {
+                            // the positions are only used to apply the changes
+                            fragment.setPosition(pos);
+                            if (fragment.isBox() && !fragment.isAuxiliary()) {
+                                hyphenatedBoxes.add(fragment);
+                            }
+                        }
+                        if (i + count > end) {
+                            // the elements of a break opportunity after the word are replaced
+                            rememberWordStart(end);
+                        }
+                        @SuppressWarnings("unchecked")
+                        List<ListElement> elements = par;
+                        elements.subList(i, i + count).clear();
+                        elements.addAll(i, fragments);
+                        end += fragments.size() - count;
+                        i += fragments.size() - 1;
+                    }
+                }
+            }
+        }
+
+        private void rememberWordStart(int index) {
+            for (int i = index; i < par.size(); i++) {
+                KnuthElement element = (KnuthElement) par.get(i);
+                if (element.isBox()) {
+                    if (!element.isAuxiliary()) {
+                        wordStarts.add(element);
+                    }
+                    return;
+                }
+            }
+        }
+
+        /** Hyphenates the words which were not hyphenated yet. */
+        void hyphenateRemainingWords() {
+            for (int i = par.ignoreAtStart; i < par.size(); i++) {
+                if (((KnuthElement) par.get(i)).getLayoutManager() == null) {
+                    break;
+                }
+                if (isUnhyphenatedWord(i)) {
+                    hyphenateWord(i, getWordEnd(i));
+                }
+            }
+        }
+
+        /**
+         * Hyphenates the words a line can break after without hyphenation, e.g. words ending
+         * with a hyphen. The fragments of such a word lose that break opportunity, so they
+         * must be known before any break is searched.
+         */
+        void hyphenateWordsBeforeBreakOpportunities() {
+            for (int i = par.ignoreAtStart; i < par.size(); i++) {
+                if (((KnuthElement) par.get(i)).getLayoutManager() == null) {
+                    break;
+                }
+                if (isUnhyphenatedWord(i)) {
+                    int end = getWordEnd(i);
+                    if (isBeforeBreakOpportunity(i, end)) {
+                        hyphenateWord(i, end);
+                    }
+                }
+            }
+        }
+
+        private boolean isBeforeBreakOpportunity(int start, int end) {
+            for (int i = end - 1; i >= start; i--) {
+                KnuthElement element = (KnuthElement) par.get(i);
+                if (element.isBox() && !element.isAuxiliary()) {
+                    Position leafPos = getLeafPosition(element.getPosition());
+                    return leafPos.getLM() instanceof TextLayoutManager
+                            && ((TextLayoutManager) leafPos.getLM())
+                                    .hasBreakOpportunityAfter((LeafPosition) leafPos);
+                }
+            }
+            return false;
+        }
+
+        /** Asks the layout managers to apply the changes, and replaces their elements. */
+        void applyChanges() {
+            List<Update> updateList = new LinkedList<Update>();
+            InlineLevelLayoutManager currLM = null;
+            for (ListIterator<?> iter = par.listIterator(par.ignoreAtStart); iter.hasNext();) {
+                LayoutManager lm = ((KnuthElement) iter.next()).getLayoutManager();
+                if (lm != currLM) {
+                    if (lm == null) {
+                        break;
+                    }
+                    currLM = (InlineLevelLayoutManager) lm;
+                    updateList.add(new Update(currLM, iter.previousIndex()));
+                }
+            }
+            synchronized (getFontLock(fobj)) {
+                processUpdates(par, updateList);
+            }
+        }
+    }
+
+    /**
+     * Line layout possibilities which can be added to another instance afterwards, as if they
+     * had been found for it.
+     */
+    private static final class RecordedLineLayouts extends LineLayoutPossibilities {
+
+        private final List<Integer> lineCounts = new ArrayList<Integer>();
+        private final List<Double> demerits = new ArrayList<Double>();
+        private final List<LineBreakPosition> breakPositions = new ArrayList<LineBreakPosition>();
+        private final List<Integer> possibilities = new ArrayList<Integer>();
+
+        @Override
+        public void addPossibility(int lineCount, double dem) {
+            super.addPossibility(lineCount, dem);
+            lineCounts.add(lineCount);
+            demerits.add(dem);
+        }
+
+        @Override
+        public void addBreakPosition(LineBreakPosition pos, int i) {
+            super.addBreakPosition(pos, i);
+            breakPositions.add(pos);
+            possibilities.add(i);
+        }
+
+        /** @param layouts the possibilities to add the recorded possibilities to */
+        void addTo(LineLayoutPossibilities layouts) {
+            for (int i = 0; i < lineCounts.size(); i++) {
+                layouts.addPossibility(lineCounts.get(i), demerits.get(i));
+            }
+            for (int i = 0; i < breakPositions.size(); i++) {
+                layouts.addBreakPosition(breakPositions.get(i), possibilities.get(i));
+            }
+        }
+    }
+
     /**
      * Line area is always considered to act as a fence.
      * @param isNotFirst ignored
@@ -1464,7 +2307,7 @@ public class LineLayoutManager extends InlineStackingLayoutManager
         return true;
     }
 
-    private HyphContext getHyphenContext(StringBuffer sbChars) {
+    private HyphContext getHyphenContext(String word) {
         // Find all hyphenation points in this word
         // (get in an array of offsets)
         // hyphenationProperties are from the block level?.
@@ -1478,14 +2321,26 @@ public class LineLayoutManager extends InlineStackingLayoutManager
         // TextLM which generate the hyphenation buffer,
         // since these properties inherit and could be specified
         // on an inline or wrapper below the block level.
-        Hyphenation hyph = Hyphenator.hyphenate(hyphenationProperties.language.getString(),
-                hyphenationProperties.country.getString(),
-                getFObj().getUserAgent().getHyphenationResourceResolver(),
-                getFObj().getUserAgent().getHyphenationPatternNames(),
-                sbChars.toString(),
-                hyphenationProperties.hyphenationRemainCharacterCount.getValue(),
-                hyphenationProperties.hyphenationPushCharacterCount.getValue(),
-                getFObj().getUserAgent());
+        String language = hyphenationProperties.language.getString();
+        String country = hyphenationProperties.country.getString();
+        int remainCount = hyphenationProperties.hyphenationRemainCharacterCount.getValue();
+        int pushCount = hyphenationProperties.hyphenationPushCharacterCount.getValue();
+        FOUserAgent userAgent = getFObj().getUserAgent();
+        FopFactory factory = FopFactory.getFactory(userAgent);
+        HyphenationCache cache = factory != null ? factory.getHyphenationCache() : null;
+        int[] hyphPoints = cache != null
+                ? cache.get(language, country, remainCount, pushCount, word) : null;
+        if (hyphPoints == null) {
+            Hyphenation hyph = Hyphenator.hyphenate(language, country,
+                    userAgent.getHyphenationResourceResolver(),
+                    userAgent.getHyphenationPatternNames(),
+                    word, remainCount, pushCount, userAgent);
+            hyphPoints = hyph != null
+                    ? hyph.getHyphenationPoints() : HyphenationCache.NO_HYPHENATION;
+            if (cache != null) {
+                cache.put(language, country, remainCount, pushCount, word, hyphPoints);
+            }
+        }
         // They hyph structure contains the information we need
         // Now start from prev: reset to that position, ask that LM to get
         // a Position for the first hyphenation offset. If the offset isn't in
@@ -1494,8 +2349,8 @@ public class LineLayoutManager extends InlineStackingLayoutManager
         // Keep looking at currentBP using next hyphenation point until the
         // returned size is greater than the available size
         // or no more hyphenation points remain. Choose the best break.
-        if (hyph != null) {
-            return new HyphContext(hyph.getHyphenationPoints());
+        if (hyphPoints != HyphenationCache.NO_HYPHENATION) {
+            return new HyphContext(hyphPoints);
         } else {
             return null;
         }
@@ -21,6 +21,8 @@ package org.apache.fop.layoutmgr.inline;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -29,14 +31,18 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.apache.fop.apps.FOUserAgent;
+import org.apache.fop.apps.FopFactory;
 import org.apache.fop.area.Trait;
 import org.apache.fop.area.inline.TextArea;
 import org.apache.fop.fo.Constants;
 import org.apache.fop.fo.FOText;
 import org.apache.fop.fo.flow.ChangeBar;
+import org.apache.fop.fo.properties.CommonFont;
 import org.apache.fop.fonts.Font;
-import org.apache.fop.fonts.FontSelector;
+import org.apache.fop.fonts.FontInfo;
+import org.apache.fop.fonts.FontTriplet;
 import org.apache.fop.fonts.GlyphMapping;
+import org.apache.fop.layoutmgr.ContentWidthCache;
 import org.apache.fop.layoutmgr.InlineKnuthSequence;
 import org.apache.fop.layoutmgr.KnuthBox;
 import org.apache.fop.layoutmgr.KnuthElement;
@@ -48,6 +54,7 @@ import org.apache.fop.layoutmgr.LeafPosition;
 import org.apache.fop.layoutmgr.Position;
 import org.apache.fop.layoutmgr.PositionIterator;
 import org.apache.fop.layoutmgr.TraitSetter;
+import org.apache.fop.layoutmgr.WidthSummary;
 import org.apache.fop.text.linebreak.LineBreakStatus;
 import org.apache.fop.traits.MinOptMax;
 import org.apache.fop.traits.SpaceVal;
@@ -79,6 +86,16 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
         }
     }
 
+    /** Orders the pending changes by the index of the mapping they replace. */
+    private static final Comparator<PendingChange> PENDING_CHANGE_ORDER
+            = new Comparator<PendingChange>() {
+        public int compare(PendingChange o1, PendingChange o2) {
+            int index1 = o1.index;
+            int index2 = o2.index;
+            return index1 < index2 ? -1 : (index1 == index2 ? 0 : 1);
+        }
+    };
+
     /**
      * logging instance
      */
@@ -107,6 +124,8 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
     private int spaceCharIPD;
     private MinOptMax wordSpaceIPD;
     private MinOptMax letterSpaceIPD;
+    /** size of a preserved or non-breaking space following another space */
+    private MinOptMax spaceAfterSpaceIPD;
     /** size of the hyphen character glyph in current font */
     private int hyphIPD;
 
@@ -115,7 +134,7 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
     private int changeOffset;
     private int thisStart;
     private int tempStart;
-    private List changeList = new LinkedList();
+    private List<PendingChange> changeList = new LinkedList<PendingChange>();
 
     private AlignmentContext alignmentContext;
 
@@ -137,6 +156,21 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
 
     private int minimumIPD = -1;
 
+    /** The widths of the elements being created by {@link #getNextKnuthElements}. */
+    private WidthSummary.Accumulator elementWidthAccumulator;
+    private WidthSummary elementWidths;
+
+    /** The fonts of the font-family of the text, in order of preference. */
+    private Font[] fonts;
+    /** Scratch buffer of {@link #selectFontForWord(int, int)}, one count per font. */
+    private int[] fontCharCounts;
+    /** The last fixed-width or zero-width space looked up, with its font and width. */
+    private char fixedWidthSpaceChar;
+    private Font fixedWidthSpaceFont;
+    private MinOptMax fixedWidthSpaceIPD;
+
+    private final LineBreakStatus lineBreakStatus = new LineBreakStatus();
+
     /**
      * Create a Text layout manager.
      *
@@ -162,7 +196,18 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
 
         foText.resetBuffer();
 
-        spaceFont = FontSelector.selectFontForCharacterInText(' ', foText, this);
+        FontInfo fontInfo = foText.getFOEventHandler().getFontInfo();
+        CommonFont commonFont = foText.getCommonFont();
+        FontTriplet[] triplets = commonFont.getFontState(fontInfo);
+        int fontSize = commonFont.fontSize.getValue(this);
+        fonts = new Font[triplets.length];
+        for (int i = 0; i < triplets.length; i++) {
+            fonts[i] = fontInfo.getFontInstance(triplets[i], fontSize);
+        }
+        fontCharCounts = new int[fonts.length];
+        fixedWidthSpaceChar = 0;
+
+        spaceFont = selectFontForCharacter(' ');
 
         // With CID fonts, space isn't necessary currentFontState.width(32)
         spaceCharIPD = spaceFont.getCharWidth(' ');
@@ -188,6 +233,7 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
         // in the SpaceVal.makeWordSpacing() method
         letterSpaceIPD = letterSpacing.getSpace();
         wordSpaceIPD = MinOptMax.getInstance(spaceCharIPD).plus(wordSpacing.getSpace());
+        spaceAfterSpaceIPD = null;
         keepTogether = foText.getKeepTogether().getWithinLine().getEnum() == Constants.EN_ALWAYS;
     }
 
@@ -765,16 +811,20 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
         lineEndBAP = context.getLineEndBorderAndPaddingWidth();
         alignmentContext = context.getAlignmentContext();
 
-        final List returnList = new LinkedList();
+        final List returnList = new ArrayList();
+        elementWidthAccumulator = new WidthSummary.Accumulator();
         KnuthSequence sequence = new InlineKnuthSequence();
+        // at most a box and a glue per character, usually much less
+        sequence.ensureCapacity((foText.length() - nextStart) / 2);
         GlyphMapping mapping = null;
         GlyphMapping prevMapping = null;
         returnList.add(sequence);
 
-        if (LOG.isDebugEnabled()) {
+        final boolean debug = LOG.isDebugEnabled();
+        if (debug) {
             LOG.debug("GK: [" + nextStart + "," + foText.length() + "]");
         }
-        LineBreakStatus lineBreakStatus = new LineBreakStatus();
+        lineBreakStatus.reset();
         thisStart = nextStart;
         boolean inWord = false;
         boolean inWhitespace = false;
@@ -803,7 +853,7 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
                 default:
                     TextLayoutManager.LOG.error("Unexpected breakAction: " + breakAction);
             }
-            if (LOG.isDebugEnabled()) {
+            if (debug) {
                 LOG.debug("GK: {"
                         + " index = " + nextStart
                         + ", char = " + CharUtilities.charToNCRef(ch)
@@ -842,14 +892,12 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
             if (ch == CharUtilities.SPACE
                     && foText.getWhitespaceTreatment() == Constants.EN_PRESERVE
                     || ch == CharUtilities.NBSPACE) {
-                final Font font = FontSelector.selectFontForCharacterInText(ch,
-                        this.foText, this);
-                font.mapChar(ch);
+                selectFontForCharacter(ch).mapChar(ch);
                 // preserved space or non-breaking space:
                 // create the GlyphMapping object
                 MinOptMax areaIPD;
                 if (prevMapping != null && prevMapping.isSpace) {
-                    areaIPD = wordSpaceIPD.minus(letterSpaceIPD);
+                    areaIPD = getSpaceAfterSpaceIPD();
                 } else {
                     areaIPD = wordSpaceIPD;
                 }
@@ -859,10 +907,9 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
                 thisStart = nextStart + 1;
             } else if (CharUtilities.isFixedWidthSpace(ch) || CharUtilities.isZeroWidthSpace(ch)) {
                 // create the GlyphMapping object
-                Font font = FontSelector.selectFontForCharacterInText(ch, foText, this);
-                MinOptMax ipd = MinOptMax.getInstance(font.getCharWidth(ch));
+                MinOptMax ipd = getFixedWidthSpaceIPD(ch);
                 mapping = new GlyphMapping(nextStart, nextStart + 1, 0, 0, ipd, false, true,
-                        breakOpportunity, font, level, null);
+                        breakOpportunity, fixedWidthSpaceFont, level, null);
                 thisStart = nextStart + 1;
             } else if (CharUtilities.isExplicitBreak(ch)) {
                 //mandatory break-character: only advance index
@@ -894,10 +941,18 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
         }
 
         setFinished(true);
+        elementWidths = elementWidthAccumulator.toWidthSummary();
+        elementWidthAccumulator = null;
         if (returnList.isEmpty()) {
             return null;
         } else {
-            determineMinIPD(returnList, context);
+            if (context.isInAutoLayoutDeterminationMode()) {
+                // the widest run of text between two legal breaks
+                minimumIPD = elementWidths.getMinWidth();
+                log.debug("TextLayoutManager with minIPD:=" + minimumIPD);
+            } else {
+                minimumIPD = 0;
+            }
             return returnList;
         }
 
@@ -905,31 +960,283 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
     }
 
     /**
-     * Determines the minIPD of the textLM's {@link #foText} by returning the width of its longest string.<br>
-     * TODO: Currently, this dedicated iteration is rather wasteful and should be integrated
-     * into {@link #getNextKnuthElements(LayoutContext, int)}, if possible. Additionally, the
-     * algorithm is quite trivial and does not take any linebreak possibilities etc. into account.
-     *
-     * @param returnList KnuthSequence of KnuthElements representing the object's {@link #foText}
-     * @param context
+     * {@inheritDoc}<br>The widths are accumulated per word and space, with the soft hyphens
+     * and the characters after which a line may break ending the runs of text the minimum
+     * width is computed from.
      */
-    private void determineMinIPD(List returnList, LayoutContext context) {
-        minimumIPD = 0;
-        ListIterator iter = returnList.listIterator();
-        while (iter.hasNext()) {
-            KnuthSequence sequence = (KnuthSequence) iter.next();
-            if (context.isInAutoLayoutDeterminationMode()) {
-                final ListIterator i = sequence.listIterator();
+    public WidthSummary getElementWidths() {
+        return elementWidths;
+    }
+
+    /**
+     * {@inheritDoc}<br>Scans the text with the same word and space segmentation as
+     * {@link #getNextKnuthElements(LayoutContext, int)}, but only accumulates the widths of
+     * the elements it would create. If configured, the widths are looked up
+     * in and added to the {@link FopFactory#getContentWidthCache() cache} of the factory.
+     */
+    public WidthSummary getContentWidths(LayoutContext context, int alignment) {
+        FopFactory factory = FopFactory.getFactory(foText.getUserAgent());
+        ContentWidthCache cache = factory != null ? factory.getContentWidthCache() : null;
+        // bidi levels are not part of the key, so such text is always measured
+        if (cache == null || foText.getBidiLevels() != null) {
+            return measureContentWidths(alignment);
+        }
+        WidthCacheKey key;
+        synchronized (getFontLock(foText)) {
+            key = new WidthCacheKey(foText, spaceFont, letterSpaceIPD, wordSpaceIPD,
+                    keepTogether, alignment);
+        }
+        WidthSummary widths = cache.get(key);
+        if (widths == null) {
+            widths = measureContentWidths(alignment);
+            cache.put(key, widths);
+        }
+        return widths;
+    }
 
-                while (i.hasNext()) {
-                    final KnuthElement element = (KnuthElement) i.next();
-                    if (element instanceof KnuthBox) {
-                        //TODO: improve algorithm!
-                        minimumIPD = Math.max(minimumIPD, element.getWidth());
+    private WidthSummary measureContentWidths(int alignment) {
+        WidthSummary.Accumulator widths = new WidthSummary.Accumulator();
+        Object fontLock = getFontLock(foText);
+        lineBreakStatus.reset();
+        GlyphMapping mapping = null;
+        GlyphMapping prevMapping = null;
+        int start = 0;
+        boolean inWord = false;
+        boolean inWhitespace = false;
+        char ch = 0;
+        int level;
+        int prevLevel = -1;
+        for (int index = 0; index < foText.length(); index++) {
+            ch = foText.charAt(index);
+            level = foText.bidiLevelAt(index);
+            byte breakAction = keepTogether
+                    ? LineBreakStatus.PROHIBITED_BREAK
+                    : lineBreakStatus.nextChar(ch);
+            boolean breakOpportunity = breakAction == LineBreakStatus.DIRECT_BREAK
+                    || breakAction == LineBreakStatus.INDIRECT_BREAK
+                    || breakAction == LineBreakStatus.COMBINING_INDIRECT_BREAK;
+            if (inWord) {
+                if (breakOpportunity
+                        || GlyphMapping.isSpace(ch)
+                        || CharUtilities.isExplicitBreak(ch)
+                        || ((prevLevel != -1) && (level != prevLevel))) {
+                    synchronized (fontLock) {
+                        prevMapping = createWordMapping(start, index, prevMapping, ch,
+                                breakOpportunity, true, prevLevel, false);
                     }
+                    addWordWidths(widths, alignment, prevMapping);
+                    start = index;
                 }
-                log.debug("TextLayoutManager with minIPD:=" + minimumIPD);
+            } else if (inWhitespace) {
+                if (ch != CharUtilities.SPACE || breakOpportunity) {
+                    prevMapping = new GlyphMapping(start, index, index - start, 0,
+                            wordSpaceIPD.mult(index - start),
+                            false, true, breakOpportunity, spaceFont, prevLevel, null);
+                    addSpaceWidths(widths, alignment, prevMapping);
+                    start = index;
+                }
+            } else {
+                if (mapping != null) {
+                    prevMapping = mapping;
+                    mapping.breakOppAfter = ch == CharUtilities.SPACE || breakOpportunity;
+                    addSpaceWidths(widths, alignment, mapping);
+                    mapping = null;
+                }
+                if (breakAction == LineBreakStatus.EXPLICIT_BREAK) {
+                    widths.endLine();
+                }
+            }
+
+            if (ch == CharUtilities.SPACE
+                    && foText.getWhitespaceTreatment() == Constants.EN_PRESERVE
+                    || ch == CharUtilities.NBSPACE) {
+                MinOptMax areaIPD;
+                if (prevMapping != null && prevMapping.isSpace) {
+                    areaIPD = getSpaceAfterSpaceIPD();
+                } else {
+                    areaIPD = wordSpaceIPD;
+                }
+                mapping = new GlyphMapping(index, index + 1, 1, 0, areaIPD, false, true,
+                        breakOpportunity, spaceFont, level, null);
+                start = index + 1;
+            } else if (CharUtilities.isFixedWidthSpace(ch) || CharUtilities.isZeroWidthSpace(ch)) {
+                MinOptMax ipd;
+                synchronized (fontLock) {
+                    ipd = getFixedWidthSpaceIPD(ch);
+                }
+                mapping = new GlyphMapping(index, index + 1, 0, 0, ipd, false, true,
+                        breakOpportunity, fixedWidthSpaceFont, level, null);
+                start = index + 1;
+            } else if (CharUtilities.isExplicitBreak(ch)) {
+                start = index + 1;
+            }
+
+            inWord = !GlyphMapping.isSpace(ch) && !CharUtilities.isExplicitBreak(ch);
+            inWhitespace = ch == CharUtilities.SPACE
+                    && foText.getWhitespaceTreatment() != Constants.EN_PRESERVE;
+            prevLevel = level;
+        }
+
+        if (inWord) {
+            synchronized (fontLock) {
+                prevMapping = createWordMapping(start, foText.length(), prevMapping, ch,
+                        false, false, prevLevel, false);
+            }
+            addWordWidths(widths, alignment, prevMapping);
+        } else if (inWhitespace) {
+            addSpaceWidths(widths, alignment, new GlyphMapping(start, foText.length(),
+                    foText.length() - start, 0, wordSpaceIPD.mult(foText.length() - start),
+                    false, true, !keepTogether, spaceFont, prevLevel, null));
+        } else if (mapping != null) {
+            mapping.breakOppAfter = ch == CharUtilities.ZERO_WIDTH_SPACE;
+            addSpaceWidths(widths, alignment, mapping);
+        }
+        return widths.toWidthSummary();
+    }
+
+    /**
+     * Adds the widths of the elements {@link #addElementsForAWordFragment} creates for the
+     * given word. The total width includes the elements added for a break after it, while
+     * the minimum width accounts for the hyphen added if the break occurs.
+     */
+    private void addWordWidths(WidthSummary.Accumulator widths, int alignment,
+                               GlyphMapping mapping) {
+        boolean suppressibleLetterSpace = mapping.breakOppAfter && !mapping.isHyphenated;
+        int width = mapping.areaIPD.getOpt();
+        int boxWidth;
+        if (letterSpaceIPD.isStiff()) {
+            boxWidth = suppressibleLetterSpace ? width - letterSpaceIPD.getOpt() : width;
+        } else {
+            boxWidth = width - mapping.letterSpaceCount * letterSpaceIPD.getOpt();
+        }
+        int suppressedWidth = suppressibleLetterSpace ? letterSpaceIPD.getOpt() : 0;
+        widths.addBox(boxWidth);
+        widths.addNonBreakingSpace(width - boxWidth - suppressedWidth);
+        if (mapping.isHyphenated) {
+            MinOptMax widthIfNoBreakOccurs = null;
+            if (mapping.endIndex < foText.length()) {
+                widthIfNoBreakOccurs = letterSpaceAdjustArray[mapping.endIndex];
+            }
+            addHyphenWidths(widths, alignment, hyphIPD, widthIfNoBreakOccurs);
+        } else if (suppressibleLetterSpace) {
+            addHyphenWidths(widths, alignment, 0, letterSpaceIPD);
+        }
+    }
+
+    /**
+     * Adds the widths of the elements {@link #addElementsForAHyphen} creates for a break.
+     * The penalty of centered text always has the width of a hyphen, and there is no
+     * element for the width if no break occurs.
+     */
+    private void addHyphenWidths(WidthSummary.Accumulator widths, int alignment,
+                                 int widthIfBreakOccurs, MinOptMax widthIfNoBreakOccurs) {
+        widths.addBreak(widthIfBreakOccurs);
+        if (alignment == EN_CENTER) {
+            widths.addPenalty(hyphIPD);
+        } else {
+            widths.addPenalty(widthIfBreakOccurs);
+            if (widthIfNoBreakOccurs != null) {
+                widths.addSpace(widthIfNoBreakOccurs.getOpt());
+            }
+        }
+    }
+
+    /**
+     * Adds the width of the elements {@link #addElementsForASpace} creates for the
+     * given space.
+     */
+    private void addSpaceWidths(WidthSummary.Accumulator widths, int alignment,
+                                GlyphMapping mapping) {
+        if (!mapping.breakOppAfter) {
+            if (alignment == Constants.EN_JUSTIFY) {
+                widths.addNonBreakingSpace(mapping.areaIPD.getOpt());
+            } else {
+                // a non-breaking space becomes a box
+                widths.addBox(mapping.areaIPD.getOpt());
+            }
+        } else {
+            widths.addSpace(mapping.areaIPD.getOpt());
+        }
+    }
+
+    /**
+     * Key of the widths of a text in the content width cache: the text together with all
+     * properties its measured widths depend on. Hyphenation is not part of the key, since
+     * the text is measured without hyphenating it.
+     */
+    private static final class WidthCacheKey {
+
+        private final String text;
+        private final CommonFont commonFont;
+        private final String fontName;
+        private final String fontFullName;
+        private final int fontSize;
+        private final MinOptMax letterSpaceIPD;
+        private final MinOptMax wordSpaceIPD;
+        private final boolean keepTogether;
+        private final int whitespaceTreatment;
+        private final int alignment;
+        private final String language;
+        private final String country;
+        private final String script;
+        private final int hash;
+
+        WidthCacheKey(FOText foText, Font spaceFont, MinOptMax letterSpaceIPD,
+                MinOptMax wordSpaceIPD, boolean keepTogether, int alignment) {
+            StringBuilder sb = new StringBuilder(foText.length());
+            for (int i = 0; i < foText.length(); i++) {
+                sb.append(foText.charAt(i));
+            }
+            this.text = sb.toString();
+            this.commonFont = foText.getCommonFont();
+            this.fontName = spaceFont.getFontName();
+            this.fontFullName = spaceFont.getFontMetrics().getFullName();
+            this.fontSize = spaceFont.getFontSize();
+            this.letterSpaceIPD = letterSpaceIPD;
+            this.wordSpaceIPD = wordSpaceIPD;
+            this.keepTogether = keepTogether;
+            this.whitespaceTreatment = foText.getWhitespaceTreatment();
+            this.alignment = alignment;
+            this.language = foText.getLanguage();
+            this.country = foText.getCountry();
+            this.script = foText.getScript();
+            this.hash = Arrays.hashCode(new Object[] {text, commonFont, fontName, fontFullName,
+                    fontSize, letterSpaceIPD, wordSpaceIPD, keepTogether, whitespaceTreatment,
+                    alignment, language, country, script});
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return hash;
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof WidthCacheKey)) {
+                return false;
             }
+            WidthCacheKey other = (WidthCacheKey) obj;
+            return hash == other.hash
+                    && text.equals(other.text)
+                    && fontSize == other.fontSize
+                    && keepTogether == other.keepTogether
+                    && whitespaceTreatment == other.whitespaceTreatment
+                    && alignment == other.alignment
+                    && equal(commonFont, other.commonFont)
+                    && equal(fontName, other.fontName)
+                    && equal(fontFullName, other.fontFullName)
+                    && letterSpaceIPD.equals(other.letterSpaceIPD)
+                    && wordSpaceIPD.equals(other.wordSpaceIPD)
+                    && equal(language, other.language)
+                    && equal(country, other.country)
+                    && equal(script, other.script);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
         }
     }
 
@@ -938,6 +1245,7 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
             sequence.add(new KnuthGlue(lineEndBAP, 0, 0, auxiliaryPosition, true));
         }
         sequence.endSequence();
+        elementWidthAccumulator.endLine();
         sequence = new InlineKnuthSequence();
         returnList.add(sequence);
         return sequence;
@@ -948,6 +1256,7 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
         addGlyphMapping(mapping);
         mapping.breakOppAfter = breakOpportunityAfter;
         addElementsForASpace(sequence, alignment, mapping, mappings.size() - 1);
+        addSpaceWidths(elementWidthAccumulator, alignment, mapping);
     }
 
     private GlyphMapping processWhitespace(final int alignment,
@@ -969,6 +1278,7 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
 
         // create the elements
         addElementsForASpace(sequence, alignment, mapping, mappings.size() - 1);
+        addSpaceWidths(elementWidthAccumulator, alignment, mapping);
 
         thisStart = nextStart;
         return mapping;
@@ -979,29 +1289,124 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
                                      final boolean checkEndsWithHyphen, int level, boolean retainControls) {
 
         //Word boundary found, process widths and kerning
-        int lastIndex = nextStart;
+        GlyphMapping mapping = createWordMapping(thisStart, nextStart, prevMapping, ch,
+                breakOpportunity, checkEndsWithHyphen, level, retainControls);
+        prevMapping = mapping;
+        addGlyphMapping(mapping);
+        tempStart = nextStart;
+
+        //add the elements
+        addElementsForAWordFragment(sequence, alignment, mapping, mappings.size() - 1);
+        addWordWidths(elementWidthAccumulator, alignment, mapping);
+        thisStart = nextStart;
+
+        return prevMapping;
+    }
+
+    /**
+     * Creates the glyph mapping for the word between the given indices, processing widths
+     * and kerning.
+     * @param start the index of the first character of the word
+     * @param end the index of the character following the word
+     * @param prevMapping the mapping preceding the word, may be null
+     * @param ch the character following the word
+     * @param breakOpportunity true if there is a break opportunity after the word
+     * @param checkEndsWithHyphen true if the word may end with a soft hyphen
+     * @param level the bidi level of the word
+     * @param retainControls true if control characters are to be retained
+     * @return the glyph mapping for the word
+     */
+    private GlyphMapping createWordMapping(int start, int end, GlyphMapping prevMapping,
+                                           char ch, boolean breakOpportunity,
+                                           boolean checkEndsWithHyphen, int level,
+                                           boolean retainControls) {
+        int lastIndex = end;
         while (lastIndex > 0 && foText.charAt(lastIndex - 1) == CharUtilities.SOFT_HYPHEN) {
             lastIndex--;
         }
         final boolean endsWithHyphen = checkEndsWithHyphen
                 && foText.charAt(lastIndex) == CharUtilities.SOFT_HYPHEN;
-        Font font = FontSelector.selectFontForCharactersInText(
-                foText, thisStart, lastIndex, foText, this);
+        Font font = selectFontForWord(start, lastIndex);
         char breakOpportunityChar = breakOpportunity ? ch : 0;
         char precedingChar = prevMapping != null && !prevMapping.isSpace
                 && prevMapping.endIndex > 0 ? foText.charAt(prevMapping.endIndex - 1) : 0;
-        GlyphMapping mapping = GlyphMapping.doGlyphMapping(foText, thisStart, lastIndex, font,
+        return GlyphMapping.doGlyphMapping(foText, start, lastIndex, font,
                 letterSpaceIPD, letterSpaceAdjustArray, precedingChar, breakOpportunityChar,
                 endsWithHyphen, level, false, false, retainControls);
-        prevMapping = mapping;
-        addGlyphMapping(mapping);
-        tempStart = nextStart;
+    }
 
-        //add the elements
-        addElementsForAWordFragment(sequence, alignment, mapping, mappings.size() - 1);
-        thisStart = nextStart;
+    /**
+     * Selects the font for the word between the given indices, like
+     * {@link org.apache.fop.fonts.FontSelector#selectFontForCharactersInText} does: the first
+     * font which has all of its characters, otherwise the first font which has most of them.
+     * @param start the index of the first character of the word
+     * @param end the index of the character following the word
+     * @return the font for the word
+     */
+    private Font selectFontForWord(int start, int end) {
+        if (fonts.length == 1) {
+            return fonts[0];
+        }
+        int codePoints = 0;
+        Arrays.fill(fontCharCounts, 0);
+        for (int i = start; i < end;) {
+            int cp = Character.codePointAt(foText, i);
+            i += Character.charCount(cp);
+            codePoints++;
+            for (int f = 0; f < fonts.length; f++) {
+                if (fonts[f].hasCodePoint(cp)) {
+                    fontCharCounts[f]++;
+                }
+            }
+        }
+        int best = 0;
+        for (int f = 0; f < fonts.length; f++) {
+            if (fontCharCounts[f] == codePoints) {
+                return fonts[f];
+            }
+            if (fontCharCounts[f] > fontCharCounts[best]) {
+                best = f;
+            }
+        }
+        return fonts[best];
+    }
 
-        return prevMapping;
+    /**
+     * @param ch a character
+     * @return the first font which has the character, or the first font if none has it
+     */
+    private Font selectFontForCharacter(char ch) {
+        for (Font font : fonts) {
+            if (font.hasChar(ch)) {
+                return font;
+            }
+        }
+        return fonts[0];
+    }
+
+    /**
+     * @return the width of a preserved or non-breaking space following another space
+     */
+    private MinOptMax getSpaceAfterSpaceIPD() {
+        if (spaceAfterSpaceIPD == null) {
+            spaceAfterSpaceIPD = wordSpaceIPD.minus(letterSpaceIPD);
+        }
+        return spaceAfterSpaceIPD;
+    }
+
+    /**
+     * Looks up the width of a fixed-width or zero-width space, and sets
+     * {@link #fixedWidthSpaceFont} to the font of the space.
+     * @param ch the space character
+     * @return the width of the space
+     */
+    private MinOptMax getFixedWidthSpaceIPD(char ch) {
+        if (ch != fixedWidthSpaceChar) {
+            fixedWidthSpaceFont = selectFontForCharacter(ch);
+            fixedWidthSpaceIPD = MinOptMax.getInstance(fixedWidthSpaceFont.getCharWidth(ch));
+            fixedWidthSpaceChar = ch;
+        }
+        return fixedWidthSpaceIPD;
     }
 
     /** {@inheritDoc} */
@@ -1176,6 +1581,12 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
         int mappingsRemoved = 0;
 
         if (!changeList.isEmpty()) {
+            if (!isChangeListSorted()) {
+                // words hyphenated on demand while breaking lines are not necessarily
+                // hyphenated in order; the sort is stable and keeps the fragments of a word
+                // in order
+                Collections.sort(changeList, PENDING_CHANGE_ORDER);
+            }
             int oldIndex = -1;
             int changeIndex;
             PendingChange currChange;
@@ -1227,6 +1638,85 @@ public class TextLayoutManager extends LeafNodeLayoutManager {
         return returnList;
     }
 
+    private boolean isChangeListSorted() {
+        int lastIndex = -1;
+        for (PendingChange change : changeList) {
+            int index = change.index;
+            if (index < lastIndex) {
+                return false;
+            }
+            lastIndex = index;
+        }
+        return true;
+    }
+
+    /**
+     * Tells this layout manager that the elements of its paragraphs were all replaced by the
+     * ones {@link #getChangedKnuthElements} returned, so that their positions refer to the
+     * current glyph mappings; the paragraphs are about to be hyphenated again.
+     */
+    void resetChangeOffset() {
+        changeOffset = 0;
+    }
+
+    /** @return the number of changes recorded by {@link #hyphenate} and not yet applied */
+    int getPendingChangeCount() {
+        return changeList.size();
+    }
+
+    /**
+     * Creates the elements of the word fragments recorded by {@link #hyphenate} since the
+     * given number of changes, without applying the changes. They are the elements
+     * {@link #getChangedKnuthElements} will return for these fragments once the changes are
+     * applied, so that a paragraph can be hyphenated word by word while it is broken into
+     * lines.
+     * @param firstChange the number of pending changes before the word was hyphenated
+     * @param alignment the alignment of the paragraph
+     * @return the elements of the fragments
+     */
+    List<KnuthElement> getPendingElements(int firstChange, int alignment) {
+        List<KnuthElement> elements = new ArrayList<KnuthElement>();
+        for (ListIterator<PendingChange> iter = changeList.listIterator(firstChange);
+                iter.hasNext();) {
+            PendingChange change = iter.next();
+            addElementsForAWordFragment(elements, alignment, change.mapping, change.index);
+        }
+        return elements;
+    }
+
+    /**
+     * Returns the number of elements created for the word fragment at the given position,
+     * before any change is applied.
+     * @param pos the position of the box of the word fragment
+     * @param alignment the alignment of the paragraph
+     * @return the number of elements of the word fragment
+     */
+    int getWordFragmentElementCount(LeafPosition pos, int alignment) {
+        List<KnuthElement> elements = new ArrayList<KnuthElement>();
+        int leafValue = pos.getLeafPos() + changeOffset;
+        addElementsForAWordFragment(elements, alignment, getGlyphMapping(leafValue), leafValue);
+        return elements.size();
+    }
+
+    /**
+     * @param pos the position of the box of a word fragment
+     * @return true if a line can break after the word fragment without hyphenating it, e.g.
+     * because it ends with a hyphen
+     */
+    boolean hasBreakOpportunityAfter(LeafPosition pos) {
+        GlyphMapping mapping = getGlyphMapping(pos.getLeafPos() + changeOffset);
+        return mapping.breakOppAfter && !mapping.isHyphenated;
+    }
+
+    /**
+     * @return the most by which a line ending at a hyphenation point of the text is wider than
+     * the text before the point, i.e. the width of the hyphen and of the border and padding
+     * ending the line
+     */
+    int getHyphenationOverhang() {
+        return hyphIPD + Math.max(lineEndBAP, 0);
+    }
+
     /** {@inheritDoc} */
     public String getWordChars(Position pos) {
         int leafValue = ((LeafPosition) pos).getLeafPos() + changeOffset;
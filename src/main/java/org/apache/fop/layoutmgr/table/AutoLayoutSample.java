@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr.table;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.xmlgraphics.util.QName;
+
+import org.apache.fop.apps.FopFactory;
+import org.apache.fop.apps.LayoutTuning;
+import org.apache.fop.fo.extensions.ExtensionElementMapping;
+import org.apache.fop.fo.flow.table.Table;
+
+/**
+ * Selects the body rows whose cells are measured to determine the column widths of a table
+ * with table-layout="auto": the first rows of the body, and every n-th row after them. The
+ * cells of the table-header and table-footer are always measured.
+ * @see LayoutTuning#getAutoTableLayoutSampleRows()
+ */
+final class AutoLayoutSample {
+
+    /** The extension attribute overriding the configured number of leading rows. */
+    static final QName SAMPLE_ROWS = new QName(ExtensionElementMapping.URI,
+            ExtensionElementMapping.STANDARD_PREFIX, "auto-table-layout-sample-rows");
+
+    /** The extension attribute overriding the configured stride. */
+    static final QName SAMPLE_STRIDE = new QName(ExtensionElementMapping.URI,
+            ExtensionElementMapping.STANDARD_PREFIX, "auto-table-layout-sample-stride");
+
+    private static final Log LOG = LogFactory.getLog(AutoLayoutSample.class);
+
+    private final int leadingRows;
+    private final int stride;
+
+    private AutoLayoutSample(int leadingRows, int stride) {
+        this.leadingRows = leadingRows;
+        this.stride = stride;
+    }
+
+    /**
+     * Returns the sample to determine the column widths of the given table with.
+     * @param table the table
+     * @return the sample, or null if all rows of the table are to be measured
+     */
+    static AutoLayoutSample forTable(Table table) {
+        LayoutTuning tuning = LayoutTuning.DEFAULT;
+        FopFactory factory = FopFactory.getFactory(table.getUserAgent());
+        if (factory != null) {
+            tuning = factory.getLayoutTuning();
+        }
+        int leadingRows = getIntAttribute(table, SAMPLE_ROWS, tuning.getAutoTableLayoutSampleRows());
+        if (leadingRows <= 0) {
+            return null;
+        }
+        int stride = getIntAttribute(table, SAMPLE_STRIDE, tuning.getAutoTableLayoutSampleStride());
+        return new AutoLayoutSample(leadingRows, stride);
+    }
+
+    private static int getIntAttribute(Table table, QName name, int defaultValue) {
+        Object value = table.getForeignAttributes().get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException nfe) {
+            LOG.warn("Ignoring invalid value \"" + value + "\" of " + name.getQName()
+                    + " on fo:table: an integer is expected");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Tells whether the cells starting in the given body row are measured.
+     * @param bodyRow the index of the row in the body of the table, 0-based and counted across
+     *                all table-body elements
+     * @return true if the cells are measured
+     */
+    boolean includes(int bodyRow) {
+        return bodyRow < leadingRows
+                || stride > 0 && (bodyRow - leadingRows) % stride == 0;
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return "AutoLayoutSample[leadingRows=" + leadingRows + ", stride=" + stride + "]";
+    }
+}
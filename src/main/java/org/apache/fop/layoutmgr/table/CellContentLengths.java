@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr.table;
+
+import java.util.List;
+
+import org.apache.fop.layoutmgr.KnuthElement;
+import org.apache.fop.layoutmgr.ListElement;
+
+/**
+ * Prefix sums over the element list of a cell, to compute the length of the content of any
+ * part of the cell in constant time. The content length of a part is needed to place the
+ * content of cells with display-align="center" or "after".
+ */
+final class CellContentLengths {
+
+    private final List<ListElement> elements;
+    /** the sum of the widths of the boxes and glues before each index */
+    private final int[] widthSums;
+    /** the index of the first box at or after each index, or the list's size if there is none */
+    private final int[] nextBoxes;
+    /** the content length of each element when it ends a part */
+    private final int[] endLengths;
+
+    /**
+     * Indexes the given element list.
+     * @param elements the element list of a cell
+     */
+    CellContentLengths(List<ListElement> elements) {
+        this.elements = elements;
+        int n = elements.size();
+        widthSums = new int[n + 1];
+        nextBoxes = new int[n + 1];
+        endLengths = new int[n];
+        int i = 0;
+        for (ListElement element : elements) {
+            KnuthElement el = (KnuthElement) element;
+            widthSums[i + 1] = widthSums[i] + (el.isBox() || el.isGlue() ? el.getWidth() : 0);
+            endLengths[i] = ActiveCell.getElementContentLength(el);
+            nextBoxes[i] = el.isBox() ? i : -1;
+            i++;
+        }
+        nextBoxes[n] = n;
+        for (i = n; --i >= 0;) {
+            if (nextBoxes[i] < 0) {
+                nextBoxes[i] = nextBoxes[i + 1];
+            }
+        }
+    }
+
+    /**
+     * @param elements an element list
+     * @return true if these lengths were computed for the given list, and it did not change
+     * in size since
+     */
+    boolean isFor(List<?> elements) {
+        return this.elements == elements && elements.size() == endLengths.length;
+    }
+
+    /**
+     * Computes the content length of a part of the cell. Glues and penalties at the beginning
+     * of the part are not counted.
+     * @param startIndex the index of the first element of the part
+     * @param endIndex the index of the last element of the part
+     * @return the content length of the part
+     */
+    int getContentLength(int startIndex, int endIndex) {
+        if (startIndex > endIndex) {
+            // May happen if the cell contributes no content on the current page (empty
+            // cell, in most cases)
+            return 0;
+        }
+        int firstBox = nextBoxes[startIndex];
+        if (firstBox > endIndex) {
+            return 0;
+        }
+        return widthSums[endIndex] - widthSums[firstBox] + endLengths[endIndex];
+    }
+}
@@ -19,7 +19,6 @@
 
 package org.apache.fop.layoutmgr.table;
 
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -37,7 +36,6 @@ import org.apache.fop.fo.properties.TableColLength;
 import org.apache.fop.layoutmgr.BlockLevelEventProducer;
 import org.apache.fop.layoutmgr.LayoutContext;
 import org.apache.fop.traits.Direction;
-import org.apache.fop.traits.MinOptMax;
 import org.apache.fop.traits.WritingModeTraits;
 import org.apache.fop.traits.WritingModeTraitsGetter;
 
@@ -56,6 +54,23 @@ public class ColumnSetup {
 
     private int maxColIndexReferenced;
 
+    /*
+     * The values of colWidths resolved against resolvedContext, and their prefix sums:
+     * widthSums[i] is the sum of the widths of the columns 1 to i. They are valid as long as
+     * neither the table unit, nor the content area IPD, nor the widths of the columns with
+     * automatic layout change.
+     */
+    private int[] widthSums;
+    private PercentBaseContext resolvedContext;
+    private ColumnWidths resolvedAutoWidths;
+    private int resolvedAutoWidthsVersion;
+
+    /*
+     * The sum of the minimum column widths and the available width of the last determination
+     * whose columns were too wide for the table, while its report is deferred.
+     */
+    private int[] unreportedTooWide;
+
     /**
      * Main Constructor.
      * @param table the table to construct this column setup for
@@ -273,14 +288,13 @@ public class ColumnSetup {
      * specified column number.
      */
     private int getXOffsetRTL(int col, int nrColSpan, PercentBaseContext context) {
-        int xoffset = 0;
-        for (int i = (col + nrColSpan - 1), nc = colWidths.size(); ++i < nc;) {
-            int effCol = i;
-            if (colWidths.get(effCol) != null) {
-                xoffset += colWidths.get(effCol).getValue(context);
-            }
+        resolveColumnWidths(context);
+        int last = widthSums.length - 1;
+        int lastSpanned = col + nrColSpan - 1;
+        if (lastSpanned >= last) {
+            return 0;
         }
-        return xoffset;
+        return widthSums[last] - widthSums[Math.max(lastSpanned, 0)];
     }
 
     /*
@@ -289,19 +303,8 @@ public class ColumnSetup {
      * specified column number.
      */
     private int getXOffsetLTR(int col, PercentBaseContext context) {
-        int xoffset = 0;
-        for (int i = col; --i >= 0;) {
-            int effCol;
-            if (i < colWidths.size()) {
-                effCol = i;
-            } else {
-                effCol = colWidths.size() - 1;
-            }
-            if (colWidths.get(effCol) != null) {
-                xoffset += colWidths.get(effCol).getValue(context);
-            }
-        }
-        return xoffset;
+        resolveColumnWidths(context);
+        return getSumOfFirstColumnWidths(col - 1);
     }
 
     /**
@@ -310,17 +313,74 @@ public class ColumnSetup {
      * @return the requested sum in millipoints
      */
     public int getSumOfColumnWidths(PercentBaseContext context) {
-        int sum = 0;
-        for (int i = 1, c = getColumnCount(); i <= c; i++) {
-            int effIndex = i;
-            if (i >= colWidths.size()) {
-                effIndex = colWidths.size() - 1;
-            }
-            if (colWidths.get(effIndex) != null) {
-                sum += colWidths.get(effIndex).getValue(context);
-            }
+        resolveColumnWidths(context);
+        return getSumOfFirstColumnWidths(getColumnCount());
+    }
+
+    /**
+     * Calculates the width of a span of columns, e.g. the width of a cell.
+     * @param col index of the first spanned column (1 is first column)
+     * @param nrColSpan number of columns spanned
+     * @param context the context for percentage based calculations
+     * @return the sum of the widths of the spanned columns in millipoints
+     */
+    public int getSpanWidth(int col, int nrColSpan, PercentBaseContext context) {
+        resolveColumnWidths(context);
+        return getSumOfFirstColumnWidths(col + nrColSpan - 1) - getSumOfFirstColumnWidths(col - 1);
+    }
+
+    /*
+     * Sums the widths of the columns 1 to n, where columns beyond the defined ones have the
+     * width of the last defined column.
+     */
+    private int getSumOfFirstColumnWidths(int n) {
+        if (n <= 0) {
+            return 0;
         }
-        return sum;
+        int last = widthSums.length - 1;
+        if (n <= last) {
+            return widthSums[n];
+        }
+        int lastWidth = widthSums[last] - widthSums[Math.max(last - 1, 0)];
+        return widthSums[last] + (n - last) * lastWidth;
+    }
+
+    /**
+     * Resolves the column widths and computes their prefix sums, unless the ones computed
+     * before are still valid. The widths are resolved again if they are requested for another
+     * context, if the widths of the columns with automatic layout changed, or after a call to
+     * {@link #invalidateColumnWidths()}.
+     * @param context the context for percentage based calculations
+     */
+    private void resolveColumnWidths(PercentBaseContext context) {
+        ColumnWidths autoWidths = null;
+        if (context instanceof TableLayoutManager) {
+            autoWidths = ((TableLayoutManager) context).getColumnWidths();
+        }
+        int autoWidthsVersion = autoWidths != null ? autoWidths.getVersion() : 0;
+        if (widthSums != null && context == resolvedContext && autoWidths == resolvedAutoWidths
+                && autoWidthsVersion == resolvedAutoWidthsVersion) {
+            return;
+        }
+        int[] sums = new int[colWidths.size()];
+        for (int i = 1; i < sums.length; i++) {
+            Length colWidth = colWidths.get(i);
+            sums[i] = sums[i - 1] + (colWidth != null ? colWidth.getValue(context) : 0);
+        }
+        widthSums = sums;
+        resolvedContext = context;
+        resolvedAutoWidths = autoWidths;
+        resolvedAutoWidthsVersion = autoWidthsVersion;
+    }
+
+    /**
+     * Discards the resolved column widths. To be called whenever the table unit or the
+     * content area IPD of the table change, as the column widths may depend on them.
+     */
+    void invalidateColumnWidths() {
+        widthSums = null;
+        resolvedContext = null;
+        resolvedAutoWidths = null;
     }
 
     /**
@@ -333,21 +393,40 @@ public class ColumnSetup {
      * @return int maximum width to be propagated to containing layout manager or -1
      */
     public int computeOptimalColumnWidthsForAutoLayout(TableLayoutManager tLM, LayoutContext context, Length width) {
+        return computeOptimalColumnWidthsForAutoLayout(tLM, context, width, false);
+    }
+
+    /**
+     * Computes for each of the table's columns the optimal width, see
+     * {@link #computeOptimalColumnWidthsForAutoLayout(TableLayoutManager, LayoutContext, Length)}.
+     * If the columns are too wide for the table, this may be reported later with
+     * {@link #reportColumnsTooWide(TableLayoutManager)}, once it is known that the column widths
+     * are final.
+     * @param tLM the TableLayoutManager
+     * @param context the layout context
+     * @param width the Table width
+     * @param deferReport true if columns too wide for the table are not to be reported yet
+     * @return int maximum width to be propagated to containing layout manager or -1
+     */
+    int computeOptimalColumnWidthsForAutoLayout(TableLayoutManager tLM, LayoutContext context,
+            Length width, boolean deferReport) {
+        unreportedTooWide = null;
         int maxSumCols = 0; // collects OPT values of the individual columns
         int minSumCols = 0;
         int contentAreaIPD = tLM.getContentAreaIPD();
+        ColumnWidths autoWidths = tLM.getColumnWidths();
 
         for (TableColumn tcol : columns) {
             if (tcol != null) {
                 if (tcol.isAutoLayout()) {
-                    MinOptMax possibleWidth = tLM.getPossibleWidths(tcol, context);
-                    if (possibleWidth == null) {
+                    int col = ColumnWidths.indexOf(tcol);
+                    if (!autoWidths.isSet(col)) {
                         // this column does not have a PrimaryGridUnit by itself
                         // Just assume that no space is required for such an 'empty' column
                         // TODO: validate this assumption (looks good after rendering it!)
                     } else {
-                        maxSumCols += possibleWidth.getOpt();
-                        minSumCols += possibleWidth.getMin();
+                        maxSumCols += autoWidths.getOpt(col);
+                        minSumCols += autoWidths.getMin(col);
                     }
                 } else {
                     int staticWidth = tcol.getColumnWidth().getValue(tLM);
@@ -372,32 +451,25 @@ public class ColumnSetup {
                         log.debug("Sum (" + maxSumCols + ") > Available Area (" + contentAreaIPD + "): Redistributing");
                     }
 
-                    // create a second list from which we can remove individual items after we are done with them
-                    List<TableColumn> columnsToProcess = new ArrayList<TableColumn>();
-                    columnsToProcess.addAll(columns);
-                    redistribute(tLM, contentAreaIPD, maxSumCols, columnsToProcess, context);
+                    redistribute(tLM, autoWidths, contentAreaIPD, maxSumCols);
                 } else {
                     // set all OPTs to the respective MINIMUM of each column
                     if (minSumCols != contentAreaIPD) {
                         // communicate this case as a warning to the user
-                        Table table = tLM.getTable();
-                        BlockLevelEventProducer eventProducer = BlockLevelEventProducer.Provider.get(
-                                table.getUserAgent().getEventBroadcaster());
-                        eventProducer.columnsInAutoTableTooWide(this, minSumCols,
-                                contentAreaIPD, table.getLocator());
+                        unreportedTooWide = new int[] {minSumCols, contentAreaIPD};
+                        if (!deferReport) {
+                            reportColumnsTooWide(tLM);
+                        }
                     }
                     boolean computeAuto = false;
                     for (TableColumn tcol : columns) {
                         if (tcol.isAutoLayout()) {
-                            MinOptMax possibleWidth = tLM.getPossibleWidths(tcol, context);
-                            if (possibleWidth == null) {
+                            int col = ColumnWidths.indexOf(tcol);
+                            if (!autoWidths.isSet(col)) {
                                 // ignore columns which do not contain PGUs -> their width is zero
                             } else {
                                 computeAuto = true;
-                                int min = possibleWidth.getMin();
-                                int max = possibleWidth.getMax();
-                                MinOptMax minWidth = MinOptMax.getInstance(min, min, max);
-                                tLM.setPossibleWidths(tcol, minWidth);
+                                autoWidths.setOpt(col, autoWidths.getMin(col));
                             }
                         } else {
                             // DO NOT CHANGE THE OPT-VALUE OF A COLUMN WITH STATIC WIDTH - IT IS
@@ -406,18 +478,12 @@ public class ColumnSetup {
                     }
                     if (computeAuto) {
                         // table overflows over the max content area. Redistribute the columns with none fixed width
-                        // create a second list from which we can remove individual items after we are done with them
-                        List<TableColumn> columnsToProcess = new ArrayList<TableColumn>();
-                        columnsToProcess.addAll(columns);
-                        redistributeAuto(tLM, contentAreaIPD, columnsToProcess, context);
+                        redistributeAuto(tLM, autoWidths, contentAreaIPD);
                     }
                 }
             } else {
                 if (width.getEnum() != Constants.EN_AUTO) {
-                    // create a second list from which we can remove individual items after we are done with them
-                    List<TableColumn> columnsToProcess = new ArrayList<TableColumn>();
-                    columnsToProcess.addAll(columns);
-                    redistributeAuto(tLM, contentAreaIPD, columnsToProcess, context);
+                    redistributeAuto(tLM, autoWidths, contentAreaIPD);
                 }
             }
         }
@@ -425,92 +491,67 @@ public class ColumnSetup {
     }
 
     /**
-     * This method redistributes the remaining width of the table recursively.
-     * At first, all static columns are excluded (i.e., the redistribution is invoked
-     * for all but these columns), since we cannot shrink them.
+     * Reports that the columns of the last determination of the optimal column widths were
+     * too wide for the table, if they were and this has not been reported yet.
+     * @param tLM the TableLayoutManager
+     */
+    void reportColumnsTooWide(TableLayoutManager tLM) {
+        if (unreportedTooWide != null) {
+            Table table = tLM.getTable();
+            BlockLevelEventProducer eventProducer = BlockLevelEventProducer.Provider.get(
+                    table.getUserAgent().getEventBroadcaster());
+            eventProducer.columnsInAutoTableTooWide(this, unreportedTooWide[0],
+                    unreportedTooWide[1], table.getLocator());
+            unreportedTooWide = null;
+        }
+    }
+
+    /**
+     * This method redistributes the remaining width of the table.
+     * At first, all static columns are excluded, since we cannot shrink them.
      * Afterwards, we try to proportionally shrink each remaining column by a factor of
      * factor = remainingArea / sum of max width of remaining columns
-     * After applying this factor to a column's MAX width, we check if the result is less
-     * than the column's minimal width - if so, this minimal width is used instead and we
-     * invoke the method again with
-     * <ul>
-     * <li> the remaining columns without the column we just changed</li>
-     * <li> the remaining area - the minimal width of the column we just changed</li>
-     * <li> an updated factor (based on the remaining area and the remaining columns)</li>
-     * </ul>
+     * Columns whose MAX width multiplied by this factor would fall below their minimal
+     * width get that minimal width instead, which reduces the remaining area and the factor
+     * for the other columns; see {@link ColumnWidthDistribution#shrink(int, int)}.
      *
-     * @param tLM              the TableLayoutManager which is used to store the dimensions of all columns
-     * @param remainingArea    the remaining width which we may still distribute among the columnsToProcess
-     * @param columnsToProcess list of table columns to process
-     * @param context          the layout context
-     * @return boolean The return value indicates whether the layout changed due to the redistribution.
+     * @param tLM              the TableLayoutManager
+     * @param autoWidths       the widths of the columns with automatic layout, which are updated
+     * @param remainingArea    the remaining width which we may still distribute among the columns
+     * @param maxSumCols       the sum of the widths of all columns
      */
-    private boolean redistribute(TableLayoutManager tLM, int remainingArea, int maxSumCols, List<TableColumn> columnsToProcess, LayoutContext context) {
-        double factor = (double) remainingArea / maxSumCols;
-
-        // step 1: check if applying the current factor leads to a value below the minimum of a column
-        for (TableColumn tcol : columnsToProcess) {
+    private void redistribute(TableLayoutManager tLM, ColumnWidths autoWidths, int remainingArea, int maxSumCols) {
+        ColumnWidthDistribution distribution = new ColumnWidthDistribution(columns.size());
+        int[] distributedColumns = new int[columns.size()];
+        for (TableColumn tcol : columns) {
             // ignore columns which have a static width since we must use their assigned value
             // ignoring them = excluding them from the columns we want to shrink
             if (!tcol.isAutoLayout()) {
                 int staticWidth = tcol.getColumnWidth().getValue(tLM);
                 remainingArea -= staticWidth;
                 maxSumCols -= staticWidth;
-                columnsToProcess.remove(tcol);
                 if (log.isDebugEnabled()) {
                     log.debug("| Col " + tcol.getColumnNumber() + " -> STATIC(" + staticWidth + ") |");
                 }
-                return redistribute(tLM, remainingArea, maxSumCols, columnsToProcess, context);
             } else {
-                MinOptMax possibleWidth = tLM.getPossibleWidths(tcol, context);
-                if (possibleWidth == null) {
+                int col = ColumnWidths.indexOf(tcol);
+                if (!autoWidths.isSet(col)) {
                     // no PrimaryGridUnits in this column
-                    columnsToProcess.remove(tcol);
                     if (log.isDebugEnabled()) {
                         log.debug("| Col " + tcol.getColumnNumber() + " -> EMPTY (0) |");
                     }
-                    return redistribute(tLM, remainingArea, maxSumCols, columnsToProcess, context);
-                }
-                int max = possibleWidth.getMax();
-                int min = possibleWidth.getMin();
-
-                if ((max * factor) < min) {
-                    // for this column: opt = min
-                    MinOptMax newWidths = MinOptMax.getInstance(min, min, max);
-                    tLM.setPossibleWidths(tcol, newWidths);
-                    // remove this column from the list, decrease the remaining area (-min), and recalculate the factor
-                    remainingArea -= min;
-                    maxSumCols -= max;
-                    // continue with all other columns which may still be shrinked
-                    columnsToProcess.remove(tcol);
-                    if (log.isDebugEnabled()) {
-                        log.debug("| Col " + tcol.getColumnNumber() + " -> MIN(" + min + ") |");
-                    }
-                    return redistribute(tLM, remainingArea, maxSumCols, columnsToProcess, context);
                 } else {
-                    // current column could be shrunk using the current factor
-                    // however, subsequent columns might not be -> wait until such columns are sorted out
+                    int i = distribution.addColumn(autoWidths.getMin(col), autoWidths.getMax(col));
+                    distributedColumns[i] = col;
                 }
             }
         }
 
-        // step 2: now we know that all remaining columns can be shrunk by the factor
-        for (TableColumn tcol : columnsToProcess) {
-            MinOptMax possibleWidth = tLM.getPossibleWidths(tcol, context);
-            int max = possibleWidth.getMax();
-            int min = possibleWidth.getMin();
-            int newOpt = (int) (max * factor);
-            if (log.isDebugEnabled()) {
-                log.debug("| Col " + tcol.getColumnNumber() + " -> OPT(" + newOpt + ") |");
-            }
-            MinOptMax newWidths = MinOptMax.getInstance(min, newOpt, max);
-            // ASSIGN to column
-            tLM.setPossibleWidths(tcol, newWidths);
-        }
+        distribution.shrink(remainingArea, maxSumCols);
+        assignWidths(autoWidths, distribution, distributedColumns);
         if (log.isDebugEnabled()) {
             log.debug("Redistribution finished");
         }
-        return true;
     }
 
     /**
@@ -519,21 +560,26 @@ public class ColumnSetup {
      * Afterwards, we try to proportionally increase each remaining column by a factor of
      * factor = column width / sum of max width of remaining columns
      *
-     * @param tLM              the TableLayoutManager which is used to store the dimensions of all columns
+     * @param tLM              the TableLayoutManager
+     * @param autoWidths       the widths of the columns with automatic layout, which are updated
      * @param maxArea          the table width
-     * @param columnsToProcess list of table columns to process
-     * @param context          the layout context
-     * @return boolean The return value indicates whether the layout changed due to the redistribution.
      */
-    private boolean redistributeAuto(TableLayoutManager tLM, int maxArea, List<TableColumn> columnsToProcess, LayoutContext context) {
+    private void redistributeAuto(TableLayoutManager tLM, ColumnWidths autoWidths, int maxArea) {
 
         int autoWidth = 0;
         int fixedWidth = 0;
 
-        for (TableColumn tcol : columnsToProcess) {
+        ColumnWidthDistribution distribution = new ColumnWidthDistribution(columns.size());
+        int[] distributedColumns = new int[columns.size()];
+        for (TableColumn tcol : columns) {
             int width = tcol.getColumnWidth().getValue(tLM);
             if (tcol.isAutoLayout()) {
                 autoWidth += width;
+                int col = ColumnWidths.indexOf(tcol);
+                if (autoWidths.isSet(col)) {
+                    int i = distribution.addColumn(width, width);
+                    distributedColumns[i] = col;
+                }
             } else {
                 fixedWidth += width;
             }
@@ -541,23 +587,23 @@ public class ColumnSetup {
 
         int remainingArea = maxArea - fixedWidth;
 
-         if (remainingArea > 0) {
-            for (TableColumn tcol : columnsToProcess) {
-                if (tcol.isAutoLayout()) {
-                    MinOptMax possibleWidth = tLM.getPossibleWidths(tcol, context);
-                    int max = possibleWidth.getMax();
-                    int min = possibleWidth.getMin();
-                    double width = tcol.getColumnWidth().getValue(tLM);
-                    double factor = width / autoWidth;
-                    int newMax =  (int) (factor * remainingArea);
-                    MinOptMax newWidths = MinOptMax.getInstance(newMax, newMax, newMax);
-                    // ASSIGN to column
-                    tLM.setPossibleWidths(tcol, newWidths);
-                }
-            }
+        if (remainingArea > 0) {
+            distribution.fill(remainingArea, autoWidth);
+            assignWidths(autoWidths, distribution, distributedColumns);
         }
-        return true;
     }
 
+    private void assignWidths(ColumnWidths autoWidths, ColumnWidthDistribution distribution,
+            int[] distributedColumns) {
+        for (int i = 0, c = distribution.getColumnCount(); i < c; i++) {
+            int col = distributedColumns[i];
+            if (log.isDebugEnabled()) {
+                log.debug("| Col " + (col + 1) + " -> " + distribution.getMin(i) + "/"
+                        + distribution.getOpt(i) + "/" + distribution.getMax(i) + " |");
+            }
+            // ASSIGN to column
+            autoWidths.set(col, distribution.getMin(i), distribution.getOpt(i), distribution.getMax(i));
+        }
+    }
 
 }
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr.table;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Distributes the available width of an auto layout table over its columns with content.
+ * Columns with a static width are not part of the distribution; the caller deducts their
+ * widths from the available area beforehand.
+ * <p>
+ * The widths are held in primitive arrays indexed in the order the columns were added,
+ * so that the distribution neither recurses nor allocates per column.
+ */
+final class ColumnWidthDistribution {
+
+    private int[] min;
+    private int[] max;
+    private int[] opt;
+    private int count;
+
+    /**
+     * Creates a new distribution.
+     * @param capacity the expected number of columns
+     */
+    ColumnWidthDistribution(int capacity) {
+        int size = Math.max(capacity, 1);
+        min = new int[size];
+        max = new int[size];
+        opt = new int[size];
+    }
+
+    /**
+     * Adds a column to the distribution.
+     * @param minWidth the minimum width of the column's content
+     * @param maxWidth the maximum width of the column's content, which may also be its
+     * specified width when stretching
+     * @return the index of the column in this distribution
+     */
+    int addColumn(int minWidth, int maxWidth) {
+        if (count == min.length) {
+            int size = count * 2;
+            min = Arrays.copyOf(min, size);
+            max = Arrays.copyOf(max, size);
+            opt = Arrays.copyOf(opt, size);
+        }
+        min[count] = minWidth;
+        max[count] = maxWidth;
+        opt[count] = maxWidth;
+        return count++;
+    }
+
+    /** @return the number of columns in the distribution */
+    int getColumnCount() {
+        return count;
+    }
+
+    /**
+     * @param index the index of the column
+     * @return the minimum width of the column
+     */
+    int getMin(int index) {
+        return min[index];
+    }
+
+    /**
+     * @param index the index of the column
+     * @return the distributed width of the column
+     */
+    int getOpt(int index) {
+        return opt[index];
+    }
+
+    /**
+     * @param index the index of the column
+     * @return the maximum width of the column
+     */
+    int getMax(int index) {
+        return max[index];
+    }
+
+    /**
+     * Shrinks the columns to fit the given area. Each column is shrunk proportionally to
+     * its maximum width by a factor of remaining area / sum of maximum widths, but not below
+     * its minimum width. A column which would end up below its minimum is set to its
+     * minimum, and the factor is recomputed from the area and columns left.
+     * <p>
+     * Clamping a column to its minimum only ever lowers the factor, so the clamped columns
+     * are exactly those with the highest min/max ratios. They are found in a single sweep
+     * over the columns sorted by that ratio, which yields the same widths as clamping the
+     * columns one by one in document order.
+     *
+     * @param remainingArea the area to distribute
+     * @param maxSumCols the sum of the maximum widths of all columns
+     */
+    void shrink(int remainingArea, int maxSumCols) {
+        Integer[] order = sortByDescendingRatio();
+        double factor = (double) remainingArea / maxSumCols;
+        int i = 0;
+        while (i < count) {
+            int col = order[i];
+            if ((max[col] * factor) >= min[col]) {
+                // all columns left have a lower ratio and can be shrunk by the factor
+                break;
+            }
+            opt[col] = min[col];
+            remainingArea -= min[col];
+            maxSumCols -= max[col];
+            factor = (double) remainingArea / maxSumCols;
+            i++;
+        }
+        for (; i < count; i++) {
+            int col = order[i];
+            opt[col] = (int) (max[col] * factor);
+        }
+    }
+
+    /**
+     * Stretches or shrinks the columns to fill the given area, proportionally to their
+     * maximum widths. Minimum and maximum are both set to the resulting width.
+     *
+     * @param area the area to fill
+     * @param sumCols the sum of the maximum widths of all columns
+     */
+    void fill(int area, int sumCols) {
+        for (int col = 0; col < count; col++) {
+            double factor = (double) max[col] / sumCols;
+            int width = (int) (factor * area);
+            min[col] = width;
+            opt[col] = width;
+            max[col] = width;
+        }
+    }
+
+    private Integer[] sortByDescendingRatio() {
+        final double[] ratio = new double[count];
+        Integer[] order = new Integer[count];
+        for (int col = 0; col < count; col++) {
+            ratio[col] = max[col] == 0 ? 0 : (double) min[col] / max[col];
+            order[col] = col;
+        }
+        // stable, so columns with the same ratio keep their document order
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(ratio[b], ratio[a]);
+            }
+        });
+        return order;
+    }
+}
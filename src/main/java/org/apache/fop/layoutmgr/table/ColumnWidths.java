@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr.table;
+
+import java.util.Arrays;
+
+import org.apache.fop.fo.flow.table.TableColumn;
+import org.apache.fop.traits.MinOptMax;
+
+/**
+ * The minimum, optimal and maximum widths of the columns of a table with automatic layout,
+ * held in parallel arrays indexed by column. A {@link TableColumn} repeated over several
+ * columns has a single entry, at the index of its column-number, so that all the columns it
+ * defines share their widths.
+ * <p>
+ * The widths are set for the columns containing {@link org.apache.fop.fo.flow.table.PrimaryGridUnit}s
+ * only; the other columns have no widths.
+ */
+final class ColumnWidths {
+
+    private int[] min;
+    private int[] opt;
+    private int[] max;
+    private boolean[] set;
+    private int version;
+
+    /**
+     * Creates a new set of column widths.
+     * @param capacity the expected number of columns
+     */
+    ColumnWidths(int capacity) {
+        int size = Math.max(capacity, 1);
+        min = new int[size];
+        opt = new int[size];
+        max = new int[size];
+        set = new boolean[size];
+    }
+
+    private ColumnWidths(ColumnWidths other) {
+        min = other.min.clone();
+        opt = other.opt.clone();
+        max = other.max.clone();
+        set = other.set.clone();
+    }
+
+    /**
+     * @return a number which changes whenever any of the widths change
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * @param column the column
+     * @return the index of the widths of the given column
+     */
+    static int indexOf(TableColumn column) {
+        return column.getColumnNumber() - 1;
+    }
+
+    /**
+     * @param col the index of the column
+     * @return true if widths have been set for the column
+     */
+    boolean isSet(int col) {
+        return col < set.length && set[col];
+    }
+
+    /**
+     * @param col the index of the column, whose widths must have been set
+     * @return the minimum width of the column
+     */
+    int getMin(int col) {
+        return min[col];
+    }
+
+    /**
+     * @param col the index of the column, whose widths must have been set
+     * @return the optimal width of the column
+     */
+    int getOpt(int col) {
+        return opt[col];
+    }
+
+    /**
+     * @param col the index of the column, whose widths must have been set
+     * @return the maximum width of the column
+     */
+    int getMax(int col) {
+        return max[col];
+    }
+
+    /**
+     * Sets the widths of a column.
+     * @param col the index of the column
+     * @param minWidth the minimum width
+     * @param optWidth the optimal width
+     * @param maxWidth the maximum width
+     */
+    void set(int col, int minWidth, int optWidth, int maxWidth) {
+        if (col >= set.length) {
+            int size = Math.max(col + 1, set.length * 2);
+            min = Arrays.copyOf(min, size);
+            opt = Arrays.copyOf(opt, size);
+            max = Arrays.copyOf(max, size);
+            set = Arrays.copyOf(set, size);
+        }
+        min[col] = minWidth;
+        opt[col] = optWidth;
+        max[col] = maxWidth;
+        set[col] = true;
+        version++;
+    }
+
+    /**
+     * Sets the optimal width of a column, whose widths must have been set.
+     * @param col the index of the column
+     * @param optWidth the optimal width
+     */
+    void setOpt(int col, int optWidth) {
+        opt[col] = optWidth;
+        version++;
+    }
+
+    /**
+     * @param col the index of the column
+     * @return the widths of the column, or null if they have not been set
+     */
+    MinOptMax get(int col) {
+        return isSet(col) ? MinOptMax.getInstance(min[col], opt[col], max[col]) : null;
+    }
+
+    /**
+     * Sets the widths of a column.
+     * @param col the index of the column
+     * @param widths the widths, or null to remove them
+     */
+    void set(int col, MinOptMax widths) {
+        if (widths != null) {
+            set(col, widths.getMin(), widths.getOpt(), widths.getMax());
+        } else if (col < set.length) {
+            set[col] = false;
+            version++;
+        }
+    }
+
+    /** @return a copy of these column widths */
+    ColumnWidths copy() {
+        return new ColumnWidths(this);
+    }
+
+    /**
+     * Replaces these column widths with the given ones.
+     * @param other the column widths to copy
+     */
+    void copyFrom(ColumnWidths other) {
+        min = other.min.clone();
+        opt = other.opt.clone();
+        max = other.max.clone();
+        set = other.set.clone();
+        version++;
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ColumnWidths[");
+        for (int col = 0; col < set.length; col++) {
+            if (set[col]) {
+                if (sb.length() > "ColumnWidths[".length()) {
+                    sb.append(", ");
+                }
+                sb.append(col + 1).append('=').append(min[col]).append('/')
+                        .append(opt[col]).append('/').append(max[col]);
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -19,23 +19,31 @@
 
 package org.apache.fop.layoutmgr.table;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.apache.fop.apps.FopFactory;
 import org.apache.fop.fo.Constants;
+import org.apache.fop.fo.FONode;
+import org.apache.fop.fo.FOText;
+import org.apache.fop.fo.flow.BasicLink;
+import org.apache.fop.fo.flow.Block;
+import org.apache.fop.fo.flow.Inline;
+import org.apache.fop.fo.flow.Wrapper;
 import org.apache.fop.fo.flow.table.EffRow;
 import org.apache.fop.fo.flow.table.GridUnit;
 import org.apache.fop.fo.flow.table.PrimaryGridUnit;
-import org.apache.fop.fo.flow.table.TableColumn;
 import org.apache.fop.fo.flow.table.TableRow;
 import org.apache.fop.fo.properties.CommonBorderPaddingBackground;
 import org.apache.fop.fo.properties.LengthRangeProperty;
 import org.apache.fop.layoutmgr.ElementListObserver;
 import org.apache.fop.layoutmgr.LayoutContext;
+import org.apache.fop.layoutmgr.LayoutTasks;
 import org.apache.fop.traits.MinOptMax;
 import org.apache.fop.util.BreakUtil;
 
@@ -58,8 +66,8 @@ class RowGroupLayoutManager {
         this.tableStepper = tableStepper;
     }
 
-    public LinkedList getNextKnuthElements(LayoutContext context, int alignment, int bodyType) {
-        LinkedList returnList = new LinkedList();
+    public List getNextKnuthElements(LayoutContext context, int alignment, int bodyType) {
+        List returnList = new ArrayList();
         createElementsForRowGroup(context, alignment, bodyType, returnList);
 
         context.updateKeepWithPreviousPending(rowGroup[0].getKeepWithPrevious());
@@ -92,41 +100,125 @@ class RowGroupLayoutManager {
      * @param returnList List to received the generated elements
      */
     private void createElementsForRowGroup(LayoutContext context, int alignment,
-                                           int bodyType, LinkedList returnList) {
+                                           int bodyType, List returnList) {
         log.debug("Handling row group with " + rowGroup.length + " rows...");
+        ForkJoinPool pool = getTableCellLayoutPool();
+        List<PrimaryGridUnit> concurrentPGUs = new ArrayList<PrimaryGridUnit>();
+        List<LayoutContext> concurrentContexts = new ArrayList<LayoutContext>();
         for (EffRow row : rowGroup) {
             for (GridUnit gu : row.getGridUnits()) {
                 if (gu.isPrimary()) {
                     PrimaryGridUnit primary = gu.getPrimary();
-                    // TODO a new LM must be created for every new static-content
-                    primary.createCellLM();
-                    primary.getCellLM().setParent(tableLM);
                     //Calculate width of cell
-                    int spanWidth = 0;
-                    Iterator colIter = tableLM.getTable().getColumns().listIterator(
-                            primary.getColIndex());
-                    for (int i = 0, c = primary.getCell().getNumberColumnsSpanned(); i < c; i++) {
-                        spanWidth += ((TableColumn) colIter.next()).getColumnWidth().getValue(
-                                tableLM);
-                    }
-                    LayoutContext childLC = LayoutContext.offspringOf(context);
-                    childLC.setStackLimitBP(context.getStackLimitBP()); //necessary?
-                    childLC.setRefIPD(spanWidth);
+                    int spanWidth = tableLM.getColumns().getSpanWidth(primary.getColIndex() + 1,
+                            primary.getCell().getNumberColumnsSpanned(), tableLM);
+                    // reuse the elements of the auto-layout width determination if the
+                    // cell's width did not change since then
+                    List elems = primary.takeMeasuredElements(spanWidth);
+                    if (elems == null) {
+                        // TODO a new LM must be created for every new static-content
+                        primary.createCellLM();
+                        primary.getCellLM().setParent(tableLM);
+                        LayoutContext childLC = LayoutContext.offspringOf(context);
+                        childLC.setStackLimitBP(context.getStackLimitBP()); //necessary?
+                        childLC.setRefIPD(spanWidth);
 
-                    //Get the element list for the cell contents
-                    List elems = primary.getCellLM().getNextKnuthElements(
-                            childLC, alignment);
+                        if (pool != null && isSelfContained(primary.getCell())) {
+                            // laid out below, together with the other such cells of the group
+                            concurrentPGUs.add(primary);
+                            concurrentContexts.add(childLC);
+                            continue;
+                        }
+                        //Get the element list for the cell contents
+                        elems = primary.getCellLM().getNextKnuthElements(
+                                childLC, alignment);
+                    }
                     ElementListObserver.observe(elems, "table-cell", primary.getCell().getId());
                     primary.setElements(elems);
                 }
             }
         }
+        if (!concurrentPGUs.isEmpty()) {
+            createElementsConcurrently(concurrentPGUs, concurrentContexts, alignment, pool);
+        }
         computeRowHeights();
         List elements = tableStepper.getCombinedKnuthElementsForRowGroup(context,
                 rowGroup, bodyType);
         returnList.addAll(elements);
     }
 
+    /**
+     * Returns the thread pool to create the element lists of the cells with, if configured.
+     * @return the thread pool, or null if the cells are to be laid out on this thread
+     * @see org.apache.fop.apps.LayoutTuning#getTableCellLayoutParallelism()
+     */
+    private ForkJoinPool getTableCellLayoutPool() {
+        FopFactory factory = FopFactory.getFactory(tableLM.getTable().getUserAgent());
+        return factory != null ? factory.getTableCellLayoutPool() : null;
+    }
+
+    /**
+     * Creates the element lists of the given PGUs concurrently on the given thread pool, and
+     * waits for all of them before they are combined into the row group's element list.
+     * @param primaries the PGUs, whose cell LMs have been created
+     * @param contexts the layout context of each PGU's cell LM
+     * @param alignment alignment indicator
+     * @param pool the thread pool
+     */
+    private void createElementsConcurrently(final List<PrimaryGridUnit> primaries,
+            final List<LayoutContext> contexts, final int alignment, ForkJoinPool pool) {
+        final int n = primaries.size();
+        final List[] elements = new List[n];
+        if (n == 1) {
+            elements[0] = primaries.get(0).getCellLM().getNextKnuthElements(
+                    contexts.get(0), alignment);
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(n);
+            for (int i = 0; i < n; i++) {
+                final int index = i;
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        elements[index] = primaries.get(index).getCellLM().getNextKnuthElements(
+                                contexts.get(index), alignment);
+                        return null;
+                    }
+                });
+            }
+            LayoutTasks.invokeAll(pool, tasks, "laying out the table cells");
+        }
+        for (int i = 0; i < n; i++) {
+            PrimaryGridUnit primary = primaries.get(i);
+            ElementListObserver.observe(elements[i], "table-cell", primary.getCell().getId());
+            primary.setElements(elements[i]);
+        }
+    }
+
+    /**
+     * Indicates whether the element list of a cell may be created concurrently with the ones
+     * of other cells. This is the case if the cell only contains blocks, inlines, basic links,
+     * wrappers and text, whose layout managers share no state with the rest of
+     * the document but the fonts, hyphenation patterns and event producers, which are guarded
+     * by the font lock. Markers, page numbers, footnotes, nested tables and the like are laid
+     * out on the rendering thread.
+     * @param node the table-cell, or one of its descendants
+     * @return true if the cell's element list may be created on another thread
+     */
+    private static boolean isSelfContained(FONode node) {
+        FONode.FONodeIterator iter = node.getChildNodes();
+        if (iter != null) {
+            while (iter.hasNext()) {
+                FONode child = iter.next();
+                if (!(child instanceof Block || child instanceof Inline
+                        || child instanceof BasicLink || child instanceof Wrapper
+                        || child instanceof FOText)
+                        || !isSelfContained(child)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Calculate the heights of the rows in the row group, see CSS21, 17.5.3 Table height
      * algorithms.
@@ -22,7 +22,6 @@ package org.apache.fop.layoutmgr.table;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.ListIterator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -40,7 +39,6 @@ import org.apache.fop.fo.flow.table.TablePart;
 import org.apache.fop.fo.properties.CommonBorderPaddingBackground;
 import org.apache.fop.fo.properties.CommonBorderPaddingBackground.BorderInfo;
 import org.apache.fop.layoutmgr.ElementListUtils;
-import org.apache.fop.layoutmgr.KnuthElement;
 import org.apache.fop.layoutmgr.KnuthPossPosIter;
 import org.apache.fop.layoutmgr.LayoutContext;
 import org.apache.fop.layoutmgr.SpaceResolver;
@@ -70,7 +68,9 @@ class RowPainter {
      * This is particularly needed for spanned cells where you need to know the y-offset
      * of the starting row when the area is generated at the time the cell is closed.
      */
-    private List rowOffsets = new ArrayList();
+    private int[] rowOffsets = new int[16];
+    /** Number of valid entries in {@link #rowOffsets}. */
+    private int rowOffsetCount;
 
     private int[] cellHeights;
     private boolean[] firstCellOnPage;
@@ -315,6 +315,9 @@ class RowPainter {
                         firstCellParts[i].start, lastCellParts[i].end,
                         actualRowHeight, borderBeforeWhich, borderAfterWhich,
                         lastOnPage);
+                if (lastCellParts[i].isLastPart()) {
+                    tclm.cellAreasAdded(firstCellParts[i].pgu);
+                }
                 firstCellParts[i] = null; // why? what about the lastCellParts[i]?
                 Arrays.fill(firstCellOnPage, i, i + currentGU.getCell().getNumberColumnsSpanned(),
                         false);
@@ -332,7 +335,7 @@ class RowPainter {
              */
             currentRow = null;
             firstRowIndex = -1;
-            rowOffsets.clear();
+            rowOffsetCount = 0;
             /*
              * The current table part has just been handled. Be it the first one or not,
              * the header or the body, in any case the borders-before of the next row
@@ -345,38 +348,6 @@ class RowPainter {
         }
     }
 
-    // TODO this is not very efficient and should probably be done another way
-    // this method is only necessary when display-align = center or after, in which case
-    // the exact content length is needed to compute the size of the empty block that will
-    // be used as padding.
-    // This should be handled automatically by a proper use of Knuth elements
-    private int computeContentLength(PrimaryGridUnit pgu, int startIndex, int endIndex) {
-        if (startIndex > endIndex) {
-            // May happen if the cell contributes no content on the current page (empty
-            // cell, in most cases)
-            return 0;
-        } else {
-            ListIterator iter = pgu.getElements().listIterator(startIndex);
-            // Skip from the content length calculation glues and penalties occurring at the
-            // beginning of the page
-            boolean nextIsBox = false;
-            while (iter.nextIndex() <= endIndex && !nextIsBox) {
-                nextIsBox = ((KnuthElement) iter.next()).isBox();
-            }
-            int len = 0;
-            if (((KnuthElement) iter.previous()).isBox()) {
-                while (iter.nextIndex() < endIndex) {
-                    KnuthElement el = (KnuthElement) iter.next();
-                    if (el.isBox() || el.isGlue()) {
-                        len += el.getWidth();
-                    }
-                }
-                len += ActiveCell.getElementContentLength((KnuthElement) iter.next());
-            }
-            return len;
-        }
-    }
-
     private void addAreasForCell(PrimaryGridUnit pgu, int startPos, int endPos,
                                  int rowHeight, int borderBeforeWhich, int borderAfterWhich, boolean lastOnPage) {
         /*
@@ -426,7 +397,9 @@ class RowPainter {
         TableCellLayoutManager cellLM = pgu.getCellLM();
         cellLM.setXOffset(tclm.getXOffsetOfGridUnit(pgu));
         cellLM.setYOffset(cellOffset);
-        cellLM.setContentHeight(computeContentLength(pgu, startPos, endPos));
+        // the exact content length is only necessary when display-align = center or after, to
+        // compute the size of the empty block that will be used as padding
+        cellLM.setContentHeight(tclm.getContentLength(pgu, startPos, endPos));
         cellLM.setTotalHeight(cellTotalHeight);
         int prevBreak = ElementListUtils.determinePreviousBreak(pgu.getElements(), startPos);
         if (endPos >= 0) {
@@ -527,9 +500,14 @@ class RowPainter {
          * to correctly offset blocks for cells starting on this row. Hence the loop
          * below.
          */
-        for (int i = rowOffsets.size(); i <= rowIndex - firstRowIndex; i++) {
-            rowOffsets.add(offset);
+        int count = rowIndex - firstRowIndex + 1;
+        if (count > rowOffsets.length) {
+            rowOffsets = Arrays.copyOf(rowOffsets, Math.max(count, rowOffsets.length * 2));
+        }
+        for (int i = rowOffsetCount; i < count; i++) {
+            rowOffsets[i] = offset;
         }
+        rowOffsetCount = Math.max(rowOffsetCount, count);
     }
 
     /**
@@ -539,7 +517,11 @@ class RowPainter {
      * @return its y-offset on the page
      */
     private int getRowOffset(int rowIndex) {
-        return (Integer) rowOffsets.get(rowIndex - firstRowIndex);
+        int i = rowIndex - firstRowIndex;
+        if (i >= rowOffsetCount) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + rowOffsetCount);
+        }
+        return rowOffsets[i];
     }
 
     // TODO get rid of that
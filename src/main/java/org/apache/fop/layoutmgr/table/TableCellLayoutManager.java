@@ -19,7 +19,7 @@
 
 package org.apache.fop.layoutmgr.table;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.ListIterator;
@@ -61,6 +61,7 @@ import org.apache.fop.layoutmgr.PositionIterator;
 import org.apache.fop.layoutmgr.RetrieveTableMarkerLayoutManager;
 import org.apache.fop.layoutmgr.SpaceResolver;
 import org.apache.fop.layoutmgr.TraitSetter;
+import org.apache.fop.layoutmgr.WidthSummary;
 import org.apache.fop.traits.BorderProps;
 import org.apache.fop.traits.MinOptMax;
 import org.apache.fop.util.ListUtil;
@@ -89,6 +90,7 @@ public class TableCellLayoutManager extends BlockStackingLayoutManager {
     private boolean isDescendantOfTableFooter;
     private boolean isDescendantOfTableHeader;
     private boolean hasRetrieveTableMarker;
+    private boolean widenedForAutoLayout;
     private boolean hasRepeatedHeader;
 
     // place holder for the addAreas arguments
@@ -179,10 +181,51 @@ public class TableCellLayoutManager extends BlockStackingLayoutManager {
         return minimumIPD;
     }
 
+    /** {@inheritDoc}<br>Also adds any indents required by the tablecell */
+    public WidthSummary getContentWidths(LayoutContext context, int alignment) {
+        WidthSummary widths = getChildContentWidths(context, alignment);
+        if (widths == null) {
+            return null;
+        }
+        synchronized (getFontLock(fobj)) {
+            return widths.plus(getIPIndents());
+        }
+    }
+
     final int getRefIPD() {
         return this.referenceIPD;
     }
 
+    /**
+     * Records that lines in this cell were widened beyond the cell's IPD while determining
+     * the column widths of a table with table-layout="auto".
+     */
+    public void setWidenedForAutoLayout() {
+        this.widenedForAutoLayout = true;
+    }
+
+    /**
+     * @return true if lines in this cell were widened during the width determination, so
+     * that its element list cannot be reused for the actual width of the cell
+     */
+    final boolean isWidenedForAutoLayout() {
+        return this.widenedForAutoLayout;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The overflow of a cell left out of the rows sampled to determine the column widths of
+     * a table with table-layout="auto" is handled by the table, which lays out its content
+     * again once the affected columns have been measured completely.
+     */
+    public boolean handleOverflow(int milliPoints) {
+        if (getParent() instanceof TableLayoutManager
+                && ((TableLayoutManager) getParent()).handleCellOverflow(primaryGridUnit)) {
+            return true;
+        }
+        return super.handleOverflow(milliPoints);
+    }
+
     /** {@inheritDoc} */
     final boolean isAutoLayout() {
         final Table table = getTable();
@@ -207,8 +250,9 @@ public class TableCellLayoutManager extends BlockStackingLayoutManager {
         cellIPD -= getIPIndents();
 
         List returnedList;
-        List contentList = new LinkedList();
-        List returnList = new LinkedList();
+        List contentList = new ArrayList();
+        // the table stepper and the area generation access the elements by index
+        List returnList = new ArrayList();
 
         LayoutManager curLM; // currently active LM
         LayoutManager prevLM = null; // previously active LM
@@ -257,7 +301,6 @@ public class TableCellLayoutManager extends BlockStackingLayoutManager {
         }
         primaryGridUnit.setKeepWithNext(context.getKeepWithNextPending());
 
-        returnedList = new LinkedList();
         if (!contentList.isEmpty()) {
             wrapPositionElements(contentList, returnList);
         } else {
@@ -20,25 +20,32 @@
 package org.apache.fop.layoutmgr.table;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.apache.fop.apps.FopFactory;
 import org.apache.fop.datatypes.PercentBaseContext;
 import org.apache.fop.fo.Constants;
+import org.apache.fop.fo.FONode;
 import org.apache.fop.fo.FObj;
+import org.apache.fop.fo.flow.AbstractRetrieveMarker;
 import org.apache.fop.fo.flow.Marker;
 import org.apache.fop.fo.flow.table.EffRow;
 import org.apache.fop.fo.flow.table.GridUnit;
 import org.apache.fop.fo.flow.table.PrimaryGridUnit;
 import org.apache.fop.fo.flow.table.Table;
 import org.apache.fop.fo.flow.table.TableBody;
+import org.apache.fop.fo.flow.table.TableCell;
 import org.apache.fop.fo.flow.table.TableColumn;
 import org.apache.fop.fo.flow.table.TablePart;
 import org.apache.fop.layoutmgr.BreakElement;
@@ -52,11 +59,13 @@ import org.apache.fop.layoutmgr.KnuthElement;
 import org.apache.fop.layoutmgr.KnuthGlue;
 import org.apache.fop.layoutmgr.KnuthPossPosIter;
 import org.apache.fop.layoutmgr.LayoutContext;
+import org.apache.fop.layoutmgr.LayoutTasks;
 import org.apache.fop.layoutmgr.ListElement;
 import org.apache.fop.layoutmgr.PageBreaker;
 import org.apache.fop.layoutmgr.Position;
 import org.apache.fop.layoutmgr.PositionIterator;
 import org.apache.fop.layoutmgr.SpaceResolver.SpaceHandlingBreakPosition;
+import org.apache.fop.layoutmgr.WidthSummary;
 import org.apache.fop.traits.MinOptMax;
 import org.apache.fop.util.BreakUtil;
 
@@ -68,6 +77,9 @@ public class TableContentLayoutManager implements PercentBaseContext {
     /** Logger **/
     private static final Log LOG = LogFactory.getLog(TableContentLayoutManager.class);
 
+    /** the number of single-column cells measured and merged at a time */
+    private static final int MEASUREMENT_BATCH_SIZE = 1024;
+
     private TableLayoutManager tableLM;
     private TableRowIterator bodyIter;
     private TableRowIterator headerIter;
@@ -82,7 +94,24 @@ public class TableContentLayoutManager implements PercentBaseContext {
 
     private TableStepper stepper;
 
-    private final Map<TableColumn, MinOptMax> baseLength = new HashMap<TableColumn, MinOptMax>();
+    private final ColumnWidths columnWidths;
+
+    private AutoLayoutSample autoLayoutSample;
+    /** the column widths determined from the sampled rows only */
+    private ColumnWidths sampledColumnWidths;
+    /** the columns of unsampled cells that overflowed, null once they have been measured */
+    private BitSet overflowingColumns;
+    /** true if sampled cells overflowed while the overflow of cells is not reported */
+    private boolean sampledCellsOverflowed;
+
+    private Boolean streaming;
+
+    /** true if the content of a cell was measured from its element list */
+    private boolean cellsMeasuredFromElements;
+
+    /** the content lengths of the parts of cells whose areas are being added */
+    private final Map<PrimaryGridUnit, CellContentLengths> cellContentLengths
+            = new HashMap<PrimaryGridUnit, CellContentLengths>();
 
     private boolean headerIsBeingRepeated;
     private boolean  atLeastOnce;
@@ -102,6 +131,7 @@ public class TableContentLayoutManager implements PercentBaseContext {
             footerIter = new TableRowIterator(table, TableRowIterator.FOOTER);
         }
         stepper = new TableStepper(this);
+        columnWidths = new ColumnWidths(table.getColumns().size());
     }
 
     /**
@@ -149,7 +179,7 @@ public class TableContentLayoutManager implements PercentBaseContext {
      * @param mom a {@link MinOptMax} representing the width requirements of the <code>key</code>
      */
     public void setBaseLength(TableColumn key, MinOptMax mom) {
-        this.baseLength.put(key, mom);
+        this.columnWidths.set(ColumnWidths.indexOf(key), mom);
     }
 
     /**
@@ -159,7 +189,26 @@ public class TableContentLayoutManager implements PercentBaseContext {
      * <code>key</code>
      */
     public final MinOptMax getBaseLength(final FObj key) {
-        return this.baseLength.get(key);
+        return this.columnWidths.get(ColumnWidths.indexOf((TableColumn) key));
+    }
+
+    /**
+     * Tells whether the content of a cell was measured from its element list while the column
+     * widths were determined. Element lists are created for the width of the cell, so the
+     * measured widths may then depend on the width of the table, e.g. for images with a
+     * percentage width or nested tables.
+     * @return true if the content of a cell was measured from its element list
+     */
+    boolean hasCellsMeasuredFromElements() {
+        return cellsMeasuredFromElements;
+    }
+
+    /**
+     * @return the widths of the table's columns with automatic layout, which are shared with
+     * the {@link ColumnSetup} and the resolution of the columns' widths
+     */
+    ColumnWidths getColumnWidths() {
+        return this.columnWidths;
     }
 
     /**
@@ -170,10 +219,30 @@ public class TableContentLayoutManager implements PercentBaseContext {
      * @return
      */
     private boolean setBaseLength(final PrimaryGridUnit primary, LayoutContext context) {
+        // retrieve the maximum width of the cell's content - problematic if col-span >1 for a static first column?
+        int ipd = primary.getCellLM().getRefIPD();
+
+        // retrieve the minimum width of the cell's content - also works for cells spanning columns
+        int minIPD = primary.getCellLM().getMinimumIPD();
+
+        return setBaseLength(primary, minIPD, ipd, context);
+    }
+
+    /**
+     * Merges the width requirements of a {@link PrimaryGridUnit} into the {@link MinOptMax}
+     * widths of the columns it spans.
+     * @param primary the PGU
+     * @param minIPD the minimum width required by the cell's content
+     * @param ipd the (maximum) width required by the cell's content
+     * @param context the layout context
+     * @return true if the width of a column without col-span was replaced
+     */
+    private boolean setBaseLength(final PrimaryGridUnit primary, int minIPD, int ipd,
+                                  LayoutContext context) {
         final Table table = this.tableLM.getTable();
         final int index = primary.getColIndex();
         final int n = index + primary.getCell().getNumberColumnsSpanned();
-        final TableColumn key = table.getColumn(index);
+        final int key = ColumnWidths.indexOf(table.getColumn(index));
 
         int availableSpanWidth = 0;
         int minSpanWidth = 0;
@@ -182,52 +251,43 @@ public class TableContentLayoutManager implements PercentBaseContext {
         int span;
 
         // calculate width (min and opt) of all columns spanned by primary
+        final ColumnSetup columnSetup = this.tableLM.getColumns();
         for (int i = index; i < n; i++) {
             final TableColumn column = table.getColumn(i);
-            span = column.getColumnWidth().getValue(this.tableLM);
+            span = columnSetup.getSpanWidth(i + 1, 1, this.tableLM);
             availableSpanWidth += span;
 
             min = span;
             if (column.isAutoLayout()) {
-                final MinOptMax length = getBaseLength(column);
-                if (length != null) {
-                    min = length.getMin();
+                final int col = ColumnWidths.indexOf(column);
+                if (columnWidths.isSet(col)) {
+                    min = columnWidths.getMin(col);
                 }
             }
             minSpanWidth += min;
         }
 
-        // retrieve the maximum width of the cell's content - problematic if col-span >1 for a static first column?
-        int ipd = primary.getCellLM().getRefIPD();
-
-        // retrieve the minimum width of the cell's content - also works for cells spanning columns
-        int minIPD = primary.getCellLM().getMinimumIPD();
-
-        final MinOptMax length = getBaseLength(key);
-        if ((availableSpanWidth == 0) || (length == null)) {
+        if ((availableSpanWidth == 0) || !columnWidths.isSet(key)) {
             // TODO: remove the following IF as soon as the computation of minIPD is corrected
             if (minIPD > ipd) {    // happens e.g. for cells containing a space: ipd=0, minIPD=len(" ")
                 ipd = minIPD;
             }
             // |_____c1_____|   <- width for both:    minSpanWidth <= optimal <= availableSpanWidth
             // |__c2__||___c3___| <- width for spanning cell: minIPD <= optimal <= ipd
-            MinOptMax initialMinOptMax = MinOptMax.getInstance(minIPD, ipd, ipd);
-            this.baseLength.put(key, initialMinOptMax);
+            columnWidths.set(key, minIPD, ipd, ipd);
         } else {
             if (index == n - 1) {    // a primary without col-span > 1
-                if ((availableSpanWidth < ipd) || (length.getMin() < minIPD)) { // cell needs more space
+                if ((availableSpanWidth < ipd) || (columnWidths.getMin(key) < minIPD)) { // cell needs more space
 
                     if (minIPD > ipd) {
                         ipd = minIPD; // See: fop/test/layoutengine/standard-testcases/table-layout_auto_simple_nested.xml
                     }
 
-                    MinOptMax possibleWidths =
-                            MinOptMax.getInstance(
-                                    Math.max(length.getMin(), minIPD),
-                                    Math.max(length.getOpt(), ipd),
-                                    Math.max(length.getMax(), ipd)
-                            );
-                    return length == this.baseLength.put(key, possibleWidths);
+                    columnWidths.set(key,
+                            Math.max(columnWidths.getMin(key), minIPD),
+                            Math.max(columnWidths.getOpt(key), ipd),
+                            Math.max(columnWidths.getMax(key), ipd));
+                    return true;
                 }
             } else {
                 // this primary spans multiple columns which may have to be resized!
@@ -243,16 +303,16 @@ public class TableContentLayoutManager implements PercentBaseContext {
 
                     // first step: ignore static columns which cannot be resized
                     // this includes removing their width from the widths to process
-                    List<TableColumn> columnsToWiden = new ArrayList<TableColumn>();
-                    for (Iterator iter = table.getColumns().subList(index, n).iterator(); iter.hasNext();) {
-                        TableColumn column = (TableColumn)iter.next();
+                    int[] columnsToWiden = new int[n - index];
+                    int columnsToWidenCount = 0;
+                    for (int i = index; i < n; i++) {
+                        TableColumn column = table.getColumn(i);
                         if (column.isAutoLayout()) {    // column can be resized
-                            int width = column.getColumnWidth().getValue(this.tableLM);
-
-                            if (tableLM.getPossibleWidths(column, context) == null) {
+                            int col = ColumnWidths.indexOf(column);
+                            if (!columnWidths.isSet(col)) {
                                 // ignore columns without PrimaryGridUnits
                             } else {
-                                columnsToWiden.add(column);
+                                columnsToWiden[columnsToWidenCount++] = col;
                             }
                         } else {    // column is static and cannot be resized
                             int width = column.getColumnWidth().getValue(this.tableLM);
@@ -264,7 +324,7 @@ public class TableContentLayoutManager implements PercentBaseContext {
                     }
 
                     // true if only static columns are spanned -> no columns left to resize!
-                    if (columnsToWiden.isEmpty()) {
+                    if (columnsToWidenCount == 0) {
                         LOG.warn("No columns to resize to fit a table-cell spanning these columns, expect overflows");
                         return false;
                     }
@@ -274,10 +334,12 @@ public class TableContentLayoutManager implements PercentBaseContext {
                         if (LOG.isDebugEnabled()) {
                             LOG.warn("Cell (" + primary.getColIndex() + "," + primary.getRowIndex() + ") spanning "
                                     + primary.getCell().getNumberColumnsSpanned() + " columns requires at least "
-                                    + minIPD + " -> widening MIN/OPT/MAX its spanned columns: " + columnsToWiden);
+                                    + minIPD + " -> widening MIN/OPT/MAX its spanned columns: "
+                                    + columnWidths);
                         }
 
-                        int totalIncrease = increaseMinimumWidthOfSpannedColumns(columnsToWiden, minSpanWidth, minIPD, context);
+                        int totalIncrease = increaseMinimumWidthOfSpannedColumns(columnsToWiden,
+                                columnsToWidenCount, minSpanWidth, minIPD);
                         // resizing the columns led to additional space being reserved by these columns!
                         availableSpanWidth += totalIncrease;
                     }
@@ -287,9 +349,10 @@ public class TableContentLayoutManager implements PercentBaseContext {
                         if (LOG.isDebugEnabled()) {
                             LOG.warn("Cell (" + primary.getColIndex() + "," + primary.getRowIndex() + ") spanning "
                                     + primary.getCell().getNumberColumnsSpanned() + " columns requires up to "
-                                    + ipd + " -> widening OPT/MAX of its spanned columns: " + columnsToWiden);
+                                    + ipd + " -> widening OPT/MAX of its spanned columns: " + columnWidths);
                         }
-                        increaseOptimalWidthOfSpannedColumns(columnsToWiden, availableSpanWidth, ipd);
+                        increaseOptimalWidthOfSpannedColumns(columnsToWiden, columnsToWidenCount,
+                                availableSpanWidth, ipd);
                     }
                 }
 
@@ -303,37 +366,35 @@ public class TableContentLayoutManager implements PercentBaseContext {
      * by the cell we are currently processing. Since this current cell requires a wider minIPD than
      * all spanned columns combined, this method increases the min. width of these columns proportionally
      * in such a way that the sum of their min. widths is >= the minIPD of the current cell.<br>
-     * Please note that for each column, all three values of its {@link MinOptMax} are increased accordingly.
+     * Please note that for each column, all three values of its widths are increased accordingly.
      * After all columns were processed and widened, the sum of additional space reserved by these columns
      * is returned.
-     * @param columnsToWiden set of non-static columns which can be resized
+     * @param columnsToWiden indices of the non-static columns which can be resized
+     * @param count the number of columns in columnsToWiden
      * @param minSpanWidthOfSpannedCells sum of the minIPDs of the columns in columnsToWiden
      * @param minIPD minimal width required by the current cell
-     * @param context
      * @return the total amount of width which was added to the columns in columnsToWiden
      */
-    private int increaseMinimumWidthOfSpannedColumns(List columnsToWiden, int minSpanWidthOfSpannedCells, int minIPD, LayoutContext context) {
+    private int increaseMinimumWidthOfSpannedColumns(int[] columnsToWiden, int count,
+            int minSpanWidthOfSpannedCells, int minIPD) {
         int totalIncrease = 0;
 
-        for (Iterator iter = columnsToWiden.iterator(); iter.hasNext();) {
-            final TableColumn column = (TableColumn) iter.next();
-            MinOptMax length = tableLM.getPossibleWidths(column, context);
+        for (int i = 0; i < count; i++) {
+            final int col = columnsToWiden[i];
+            int min = columnWidths.getMin(col);
 
             // calculate factor for increase of width
-            double factor = (double)length.getMin() / minSpanWidthOfSpannedCells;
+            double factor = (double) min / minSpanWidthOfSpannedCells;
 
             // how much more space is required to display the spanning cell
             int totalMissingMinSpace = minIPD - minSpanWidthOfSpannedCells;
 
             int increaseForMinimum = (int) Math.ceil(factor * totalMissingMinSpace);
 
-            MinOptMax newMom =
-                    MinOptMax.getInstance(
-                            length.getMin() + increaseForMinimum,
-                            length.getOpt() + increaseForMinimum,
-                            length.getMax() + increaseForMinimum
-                    );
-            setBaseLength(column, newMom);
+            columnWidths.set(col,
+                    min + increaseForMinimum,
+                    columnWidths.getOpt(col) + increaseForMinimum,
+                    columnWidths.getMax(col) + increaseForMinimum);
             totalIncrease += increaseForMinimum;
         }
         return totalIncrease;
@@ -341,36 +402,30 @@ public class TableContentLayoutManager implements PercentBaseContext {
 
     /**
      * takes a set of columns (<b>columnsToWiden</b>) spanned by one cell (represented via a
-     * {@link PrimaryGridUnit}) and increases their minimum width value (in case the spanning cell's
-     * minIPD is bigger than the sum of
-     * goes through a subset of the columns
-     * @param columnsToWiden
-     * @param availableWidth
-     * @param requiredWidth
-     * @return
+     * {@link PrimaryGridUnit}) and increases their optimal and maximum width values
+     * proportionally, so that their sum covers the width required by the spanning cell
+     * @param columnsToWiden indices of the non-static columns which can be resized
+     * @param count the number of columns in columnsToWiden
+     * @param availableWidth the width currently reserved by the spanned columns
+     * @param requiredWidth the width required by the spanning cell
      */
-    private boolean increaseOptimalWidthOfSpannedColumns(List columnsToWiden, int availableWidth, int requiredWidth) {
-        for (Iterator iter = columnsToWiden.iterator(); iter.hasNext();) {
-            final TableColumn column = (TableColumn) iter.next();
-            MinOptMax length = getBaseLength(column);
+    private void increaseOptimalWidthOfSpannedColumns(int[] columnsToWiden, int count,
+            int availableWidth, int requiredWidth) {
+        for (int i = 0; i < count; i++) {
+            final int col = columnsToWiden[i];
+            int opt = columnWidths.getOpt(col);
 
             // calculate factor for increase of width
-            double factor = (double) length.getOpt() / availableWidth;
+            double factor = (double) opt / availableWidth;
 
             // how much more space is required to display the spanning cell
             int totalMissingMaxSpace = requiredWidth - availableWidth;
 
             // ensure the content will fit by getting the ceiling of the product
             int increase = (int) Math.ceil(factor * totalMissingMaxSpace);
-            MinOptMax newMom =
-                    MinOptMax.getInstance(
-                            length.getMin(),
-                            length.getOpt() + increase,
-                            length.getMax() + increase
-                    );
-            setBaseLength(column, newMom);
+            columnWidths.set(col, columnWidths.getMin(col), opt + increase,
+                    columnWidths.getMax(col) + increase);
         }
-        return false;
     }
 
     private boolean setBaseLength(final TableContentPosition position, LayoutContext context) {
@@ -425,11 +480,12 @@ public class TableContentLayoutManager implements PercentBaseContext {
         KnuthBox headerAsFirst = null;
         KnuthBox headerAsSecondToLast = null;
         KnuthBox footerAsLast = null;
-        LinkedList returnList = new LinkedList();
+        List returnList = new ArrayList();
         int headerFootnoteBPD = 0;
         if (headerIter != null && headerList == null) {
-            this.headerList = getKnuthElementsForRowIterator(
-                    headerIter, context, alignment, TableRowIterator.HEADER);
+            this.headerList = new LinkedList();
+            addKnuthElementsForRowIterator(
+                    headerIter, context, alignment, TableRowIterator.HEADER, headerList);
 
             setBaseLength(this.headerList, context);
             /* NOT sure why we need to recreate header iterator, this can lead to an endless loop since we get the same
@@ -472,8 +528,9 @@ public class TableContentLayoutManager implements PercentBaseContext {
             }
         }
         if (footerIter != null && footerList == null) {
-            this.footerList = getKnuthElementsForRowIterator(
-                    footerIter, context, alignment, TableRowIterator.FOOTER);
+            this.footerList = new LinkedList();
+            addKnuthElementsForRowIterator(
+                    footerIter, context, alignment, TableRowIterator.FOOTER, footerList);
 
             setBaseLength(this.footerList, context);
             /* NOT sure why we need to recreate footer iterator, this can lead to an endless loop since we get the same
@@ -512,8 +569,8 @@ public class TableContentLayoutManager implements PercentBaseContext {
                 footerNetHeight += getFootnotesBPD(footnotes);
             }
         }
-        returnList.addAll(getKnuthElementsForRowIterator(
-                bodyIter, context, alignment, TableRowIterator.BODY));
+        addKnuthElementsForRowIterator(
+                bodyIter, context, alignment, TableRowIterator.BODY, returnList);
 
         setBaseLength(returnList, context);
         /* NOT sure why we need to recreate table iterators, this can lead to an endless loop since we get the same
@@ -539,20 +596,20 @@ public class TableContentLayoutManager implements PercentBaseContext {
 
         if (headerAsFirst != null) {
             int insertionPoint = 0;
-            if (returnList.size() > 0 && ((ListElement)returnList.getFirst()).isForcedBreak()) {
+            if (returnList.size() > 0 && ((ListElement)returnList.get(0)).isForcedBreak()) {
                 insertionPoint++;
             }
             returnList.add(insertionPoint, headerAsFirst);
         } else if (headerAsSecondToLast != null) {
             int insertionPoint = returnList.size();
-            if (returnList.size() > 0 && ((ListElement)returnList.getLast()).isForcedBreak()) {
+            if (returnList.size() > 0 && ((ListElement)returnList.get(returnList.size() - 1)).isForcedBreak()) {
                 insertionPoint--;
             }
             returnList.add(insertionPoint, headerAsSecondToLast);
         }
         if (footerAsLast != null) {
             int insertionPoint = returnList.size();
-            if (returnList.size() > 0 && ((ListElement)returnList.getLast()).isForcedBreak()) {
+            if (returnList.size() > 0 && ((ListElement)returnList.get(returnList.size() - 1)).isForcedBreak()) {
                 insertionPoint--;
             }
             returnList.add(insertionPoint, footerAsLast);
@@ -578,11 +635,11 @@ public class TableContentLayoutManager implements PercentBaseContext {
      * @param alignment alignment indicator
      * @param bodyType Indicates what kind of body is being processed
      *                  (BODY, HEADER or FOOTER)
-     * @return An element list
+     * @param returnList the list to append the elements to
      */
-    private LinkedList getKnuthElementsForRowIterator(TableRowIterator iter,
-                                                      LayoutContext context, int alignment, int bodyType) {
-        LinkedList returnList = new LinkedList();
+    private void addKnuthElementsForRowIterator(TableRowIterator iter,
+            LayoutContext context, int alignment, int bodyType, List returnList) {
+        int start = returnList.size();
         EffRow[] rowGroup = iter.getNextRowGroup();
         // TODO homogenize the handling of keeps and breaks
         context.clearKeepsPending();
@@ -654,7 +711,7 @@ public class TableContentLayoutManager implements PercentBaseContext {
          * represent the content. In such a case the break is simply disabled by setting
          * its penalty to infinite.
          */
-        if (!returnList.isEmpty()) {
+        if (returnList.size() > start) {
             ListIterator elemIter = returnList.listIterator(returnList.size());
             ListElement elem = (ListElement) elemIter.previous();
             if (elem instanceof KnuthGlue) {
@@ -670,15 +727,16 @@ public class TableContentLayoutManager implements PercentBaseContext {
         //fox:widow-content-limit
         int widowContentLimit = getTableLM().getTable().getWidowContentLimit().getValue();
         if (widowContentLimit != 0 && bodyType == TableRowIterator.BODY) {
-            ElementListUtils.removeLegalBreaks(returnList, widowContentLimit);
+            ElementListUtils.removeLegalBreaks(returnList.subList(start, returnList.size()),
+                    widowContentLimit);
         }
         //fox:orphan-content-limit
         int orphanContentLimit = getTableLM().getTable().getOrphanContentLimit().getValue();
         if (orphanContentLimit != 0 && bodyType == TableRowIterator.BODY) {
-            ElementListUtils.removeLegalBreaksFromEnd(returnList, orphanContentLimit);
+            ElementListUtils.removeLegalBreaksFromEnd(returnList.subList(start, returnList.size()),
+                    orphanContentLimit);
         }
 
-        return returnList;
     }
 
     /**
@@ -927,6 +985,20 @@ public class TableContentLayoutManager implements PercentBaseContext {
         return tableLM.getBaseLength(lengthBase, fobj);
     }
 
+    /**
+     * Sets the rows to determine the column widths of a table with table-layout="auto" from.
+     * If cells overflow their columns during the subsequent call to
+     * {@link #getNextKnuthElements(LayoutContext, int)}, the overflow is not reported, but
+     * recorded, see {@link #hasOverflowingUnsampledCells()} and
+     * {@link #hasOverflowingSampledCells()}. It is only reported once the table is laid out
+     * for the last time.
+     * @param sample the sample, or null to measure all rows
+     */
+    void setAutoLayoutSample(AutoLayoutSample sample) {
+        this.autoLayoutSample = sample;
+        this.overflowingColumns = sample != null ? new BitSet() : null;
+    }
+
     /**
      * essentially, do the same things as {@link TableContentLayoutManager#getNextKnuthElements(LayoutContext, int)},
      * but only do the bare minimum required to get the {@link MinOptMax} values for each column of the
@@ -936,6 +1008,7 @@ public class TableContentLayoutManager implements PercentBaseContext {
      * @param alignment
      */
     public void determineAutoLayoutWidths(LayoutContext context, int alignment) {
+        List<PrimaryGridUnit> primaries = new ArrayList<PrimaryGridUnit>();
         List<PrimaryGridUnit> colspanningPGUs = new LinkedList<PrimaryGridUnit>();
         Table table = getTableLM().getTable();
 
@@ -945,86 +1018,377 @@ public class TableContentLayoutManager implements PercentBaseContext {
 
         if (table.getTableHeader() != null) {
             tempheaderIter = new TableRowIterator(table, TableRowIterator.HEADER);
-            iterateOverTableRows(tempheaderIter, context, alignment, TableRowIterator.HEADER, colspanningPGUs);
+            iterateOverTableRows(tempheaderIter, TableRowIterator.HEADER, primaries, colspanningPGUs,
+                    context, alignment);
         }
 
-        iterateOverTableRows(tempbodyIter, context, alignment, TableRowIterator.BODY, colspanningPGUs);
+        iterateOverTableRows(tempbodyIter, TableRowIterator.BODY, primaries, colspanningPGUs,
+                context, alignment);
 
         if (table.getTableFooter() != null) {
             tempfooterIter = new TableRowIterator(table, TableRowIterator.FOOTER);
-            iterateOverTableRows(tempfooterIter, context, alignment, TableRowIterator.FOOTER, colspanningPGUs);
+            iterateOverTableRows(tempfooterIter, TableRowIterator.FOOTER, primaries, colspanningPGUs,
+                    context, alignment);
+        }
+
+        determineWidths(primaries, colspanningPGUs, context, alignment);
+
+        if (overflowingColumns != null) {
+            sampledColumnWidths = columnWidths.copy();
         }
+    }
+
+    /**
+     * Records the overflow of a cell's content while the table is laid out with the column
+     * widths determined from the sampled rows. The overflow is not to be reported then, since
+     * the table is laid out a second time if a cell overflows: if the cell was left out of
+     * the sampled rows, the widths of its columns are determined again from all their cells
+     * first. The overflow is reported during that second layout, if it persists.
+     * @param primary the PGU of the overflowing cell
+     * @return true if the overflow was recorded and is not to be reported
+     * @see #setAutoLayoutSample(AutoLayoutSample)
+     */
+    boolean handleCellOverflow(PrimaryGridUnit primary) {
+        if (overflowingColumns == null) {
+            return false;
+        }
+        if (isSampled(primary)) {
+            sampledCellsOverflowed = true;
+        } else {
+            int colIndex = primary.getColIndex();
+            overflowingColumns.set(colIndex, colIndex + primary.getCell().getNumberColumnsSpanned());
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the content of cells left out of the sampled rows overflowed during the
+     * last call to {@link #getNextKnuthElements(LayoutContext, int)}
+     */
+    boolean hasOverflowingUnsampledCells() {
+        return overflowingColumns != null && !overflowingColumns.isEmpty();
+    }
+
+    /**
+     * @return true if the content of cells of the sampled rows overflowed during the last call
+     * to {@link #getNextKnuthElements(LayoutContext, int)}, without being reported
+     */
+    boolean hasOverflowingSampledCells() {
+        return overflowingColumns != null && sampledCellsOverflowed;
+    }
+
+    /**
+     * Keeps the column widths determined from the sampled rows, and prepares this layout
+     * manager for generating the table's elements again, so that the overflow of the sampled
+     * cells that overflowed is reported as usual.
+     */
+    void endAutoLayoutSample() {
+        overflowingColumns = null;
+        sampledColumnWidths = null;
+        sampledCellsOverflowed = false;
+        resetIterators();
+    }
+
+    /**
+     * Determines the widths of the columns which cells left out of the sampled rows overflowed
+     * from all their cells, and prepares this layout manager for generating the table's
+     * elements again. The base lengths of the other columns are the ones determined from the
+     * sampled rows, before {@link ColumnSetup#computeOptimalColumnWidthsForAutoLayout} adjusted
+     * them. Overflowing cells are reported as usual from now on.
+     * @param context the layout context
+     * @param alignment the alignment
+     */
+    void determineAutoLayoutWidthsOfOverflowingColumns(LayoutContext context, int alignment) {
+        BitSet columns = overflowingColumns;
+        overflowingColumns = null;
+        sampledCellsOverflowed = false;
+        columnWidths.copyFrom(sampledColumnWidths);
+        sampledColumnWidths = null;
+
+        List<PrimaryGridUnit> primaries = new ArrayList<PrimaryGridUnit>();
+        List<PrimaryGridUnit> colspanningPGUs = new LinkedList<PrimaryGridUnit>();
+        Table table = getTableLM().getTable();
+        TableRowIterator tempbodyIter = new TableRowIterator(table, TableRowIterator.BODY);
+        EffRow[] rowGroup;
+        while ((rowGroup = tempbodyIter.getNextRowGroup()) != null) {
+            for (EffRow row : rowGroup) {
+                for (GridUnit gu : row.getGridUnits()) {
+                    if (gu.isPrimary()) {
+                        PrimaryGridUnit primary = gu.getPrimary();
+                        int colIndex = primary.getColIndex();
+                        int n = colIndex + primary.getCell().getNumberColumnsSpanned();
+                        int overflowingColumn = columns.nextSetBit(colIndex);
+                        if (!isSampled(primary) && overflowingColumn >= 0 && overflowingColumn < n) {
+                            collectPrimary(primary, primaries, colspanningPGUs, context, alignment);
+                        }
+                    }
+                }
+            }
+        }
+        determineWidths(primaries, colspanningPGUs, context, alignment);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Measured the unsampled cells of the overflowing columns " + columns);
+        }
+        resetIterators();
+    }
+
+    /**
+     * Prepares this layout manager for generating the table's elements again.
+     */
+    private void resetIterators() {
+        Table table = getTableLM().getTable();
+        this.bodyIter = new TableRowIterator(table, TableRowIterator.BODY);
+        if (this.headerIter != null) {
+            this.headerIter = new TableRowIterator(table, TableRowIterator.HEADER);
+            this.headerList = null;
+        }
+        if (this.footerIter != null) {
+            this.footerIter = new TableRowIterator(table, TableRowIterator.FOOTER);
+            this.footerList = null;
+        }
+        this.stepper = new TableStepper(this);
+    }
+
+    /**
+     * Tells whether the cell of the given PGU is measured to determine the column widths.
+     * @param primary the PGU
+     * @return false if the cell starts in a body row left out of the sample
+     */
+    private boolean isSampled(PrimaryGridUnit primary) {
+        // the rows of all table-body elements are iterated as one body, so the row index of a
+        // body cell runs across them, see TableRowIterator
+        return autoLayoutSample == null || !(primary.getTablePart() instanceof TableBody)
+                || autoLayoutSample.includes(primary.getRowIndex());
+    }
+
+    /**
+     * Determines the widths of the given PGUs. PGUs spanning multiple columns are processed
+     * last, since their widths cannot be determined before the widths of the spanned columns.
+     * @param primaries the PGUs, each spanning a single column
+     * @param colspanningPGUs the PGUs spanning multiple columns
+     * @param context the layout context
+     * @param alignment the alignment
+     */
+    private void determineWidths(List<PrimaryGridUnit> primaries,
+            List<PrimaryGridUnit> colspanningPGUs, LayoutContext context, int alignment) {
+        determineWidthsOfBatch(primaries, context, alignment);
 
         for (PrimaryGridUnit primary : colspanningPGUs) {
             determineWidthOfPrimary(primary, context, alignment);
         }
+        colspanningPGUs.clear();
+    }
+
+    /**
+     * Adds a PGU to the ones whose widths are to be determined. The widths of PGUs spanning a
+     * single column are determined in batches as they are collected, so that neither the
+     * PGUs of the whole table nor their layout managers are held at once.
+     * @param primary the PGU
+     * @param primaries the current batch of PGUs spanning a single column
+     * @param colspanningPGUs the PGUs spanning multiple columns, which are processed last
+     * @param context the layout context
+     * @param alignment the alignment
+     */
+    private void collectPrimary(PrimaryGridUnit primary, List<PrimaryGridUnit> primaries,
+            List<PrimaryGridUnit> colspanningPGUs, LayoutContext context, int alignment) {
+        // the width of PGUs in entries which span multiple columns
+        // cannot be determined before the widths of the spanned columns
+        if (primary.getCell().getNumberColumnsSpanned() > 1) {
+            LOG.debug("Will revisit later");
+            colspanningPGUs.add(primary);
+        } else {
+            primaries.add(primary);
+            if (primaries.size() == MEASUREMENT_BATCH_SIZE) {
+                determineWidthsOfBatch(primaries, context, alignment);
+            }
+        }
+    }
+
+    /**
+     * Determines the widths of a batch of PGUs, in the order they were collected, and clears
+     * the batch.
+     * @param primaries the PGUs, each spanning a single column
+     * @param context the layout context
+     * @param alignment the alignment
+     */
+    private void determineWidthsOfBatch(List<PrimaryGridUnit> primaries, LayoutContext context,
+            int alignment) {
+        ForkJoinPool pool = getAutoTableLayoutPool();
+        if (pool != null && primaries.size() > 1) {
+            determineWidthsOfPrimaries(primaries, context, alignment, pool);
+        } else {
+            for (PrimaryGridUnit primary : primaries) {
+                determineWidthOfPrimary(primary, context, alignment);
+            }
+        }
+        primaries.clear();
     }
 
     /**
      * To be used only during the preprocessing run which determines the dimensions of Tables with table-layout="auto".
      * Iterates over all rows of the provided iterator (either for the header, footer or body of a table depending
-     * on the parameter <code>bodyType</code>). For each row, the contained {@link PrimaryGridUnit}s are taken to
-     * determine their widths based on their content. These widths are then propagated to the individual
-     * {@link TableColumn}s via {@link #setBaseLength(PrimaryGridUnit)}. Afterwards, the {@link PrimaryGridUnit}'s
-     * elements reset so that they are properly processed during the rendering run (this is necessary since the
-     * dimensions obtained for a column are still subject to changes). <br>
+     * on the parameter <code>bodyType</code>) and collects the contained {@link PrimaryGridUnit}s whose widths
+     * are then determined based on their content, in the order they were collected. <br>
      * Based on
-     * {@link TableContentLayoutManager#getKnuthElementsForRowIterator(TableRowIterator, LayoutContext, int, int)}
+     * {@link TableContentLayoutManager#addKnuthElementsForRowIterator(TableRowIterator, LayoutContext, int, int, List)}
      * However, since we are only interested in the widths of the contained PGUs, most of the original method was
      * removed.
+     * Cells of body rows left out of the {@link #setAutoLayoutSample(AutoLayoutSample) sample}
+     * are skipped.
      * @param iter Iterator providing access to rows which belong either to the table's body, header or footer
-     * @param context layout context
-     * @param alignment
      * @param bodyType indicates which part of a table is processed (actually not required)
+     * @param primaries receives the PGUs which span a single column
+     * @param colspanningPGUs receives the PGUs which span multiple columns
+     * @param context the layout context
+     * @param alignment the alignment
+     * @see #collectPrimary(PrimaryGridUnit, List, List, LayoutContext, int)
      */
     private void iterateOverTableRows(TableRowIterator iter,    // returns indiv. rows
-                                      LayoutContext context, int alignment, int bodyType,
-                                      List<PrimaryGridUnit> colspanningPGUs) {
+                                      int bodyType, List<PrimaryGridUnit> primaries,
+                                      List<PrimaryGridUnit> colspanningPGUs,
+                                      LayoutContext context, int alignment) {
         EffRow[] rowGroup;
         while ((rowGroup = iter.getNextRowGroup()) != null) {
             //RowGroupLayoutManager rowGroupLM = new RowGroupLayoutManager(getTableLM(), rowGroup,
             //        null);    // the actual tablestepper might lead to undesired side effects!
             /**
              * based on RowGroupLayoutManager#createElementsForRowGroup
-             * initializes the PGUs of one row at a time
+             * collects the PGUs of one row at a time
              */
             for (EffRow row : rowGroup) {
                 for (GridUnit gu : row.getGridUnits()) {
                     if (gu.isPrimary()) {
                         PrimaryGridUnit primary = gu.getPrimary();
+                        if (isSampled(primary)) {
+                            collectPrimary(primary, primaries, colspanningPGUs, context, alignment);
+                        }
+                    }
+                }
+            }
+        }
+    }
 
-                        // during this iteration, the width of PGUs in entries which span multiple columns
-                        // cannot be determined
-                        if (primary.getCell().getNumberColumnsSpanned() > 1) {
-                            LOG.debug("Will revisit later");
-                            colspanningPGUs.add(primary);
-                        } else {
-                            determineWidthOfPrimary(primary, context, alignment);
+    /**
+     * Returns the thread pool to measure the cells of this table with, if configured.
+     * @return the thread pool, or null if the cells are to be measured on this thread
+     * @see org.apache.fop.apps.LayoutTuning#getAutoTableLayoutParallelism()
+     */
+    private ForkJoinPool getAutoTableLayoutPool() {
+        FopFactory factory = FopFactory.getFactory(tableLM.getTable().getUserAgent());
+        return factory != null ? factory.getAutoTableLayoutPool() : null;
+    }
+
+    /**
+     * Determines the widths of the given PGUs, measuring their content concurrently on the
+     * given thread pool. The cell LMs and their layout contexts, which resolve the column
+     * widths, are created on this thread before the measurement is forked. Measuring a cell
+     * only reads the state shared with other cells, and creates its descendant LMs under the
+     * {@link org.apache.fop.layoutmgr.AbstractBaseLayoutManager#getFontLock(FONode)
+     * font lock}, so the results are merged into
+     * the column widths afterwards, one PGU after the other in the given order. This gives the
+     * same column widths as {@link #determineWidthOfPrimary} called for each PGU. Cells whose
+     * content cannot be measured fall back to their element lists during the merge, on this
+     * thread.
+     * @param primaries the PGUs, each spanning a single column
+     * @param context the layout context
+     * @param alignment the alignment
+     * @param pool the thread pool
+     */
+    private void determineWidthsOfPrimaries(List<PrimaryGridUnit> primaries,
+                                            LayoutContext context, final int alignment,
+                                            ForkJoinPool pool) {
+        final int n = primaries.size();
+        final TableCellLayoutManager[] cellLMs = new TableCellLayoutManager[n];
+        final LayoutContext[] cellContexts = new LayoutContext[n];
+        for (int i = 0; i < n; i++) {
+            PrimaryGridUnit primary = primaries.get(i);
+            if (!containsRetrieveMarker(primary.getCell())) {
+                cellLMs[i] = createCellLM(primary);
+                cellContexts[i] = createCellLayoutContext(primary, context);
+            }
+        }
+        final WidthSummary[] widths = new WidthSummary[n];
+        int chunkSize = Math.max(1, n / (pool.getParallelism() * 4));
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int from = 0; from < n; from += chunkSize) {
+            final int start = from;
+            final int end = Math.min(n, from + chunkSize);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for (int i = start; i < end; i++) {
+                        if (cellLMs[i] != null) {
+                            widths[i] = cellLMs[i].getContentWidths(cellContexts[i], alignment);
                         }
                     }
+                    return null;
                 }
+            });
+        }
+        LayoutTasks.invokeAll(pool, tasks, "measuring the table cells");
+
+        for (int i = 0; i < n; i++) {
+            if (cellLMs[i] != null) {
+                mergeWidthOfPrimary(primaries.get(i), widths[i], context, alignment);
+            } else {
+                determineWidthOfPrimary(primaries.get(i), context, alignment);
             }
         }
     }
 
     private void determineWidthOfPrimary(PrimaryGridUnit primary, LayoutContext context, int alignment) {
-        // recursively retrieve (and thereby calculate the dimensions of)
-        // all KnuthElements of all contained LayoutManagers for the given cell
+        mergeWidthOfPrimary(primary, measurePrimary(primary, context, alignment), context, alignment);
+    }
+
+    /**
+     * Creates a new cell LM for the PGU and measures the cell's content without creating any
+     * Knuth elements, see {@link TableCellLayoutManager#getContentWidths(LayoutContext, int)}.
+     * @param primary the PGU
+     * @param context the layout context
+     * @param alignment the alignment
+     * @return the widths of the cell's content, or null if it cannot be measured this way
+     */
+    private WidthSummary measurePrimary(PrimaryGridUnit primary, LayoutContext context, int alignment) {
+        return createCellLM(primary).getContentWidths(createCellLayoutContext(primary, context),
+                alignment);
+    }
+
+    /**
+     * Creates a new cell LM for the PGU, as a child of the table LM.
+     * @param primary the PGU
+     * @return the cell LM
+     */
+    private TableCellLayoutManager createCellLM(PrimaryGridUnit primary) {
         primary.createCellLM();
         TableCellLayoutManager cellLM = primary.getCellLM();
         cellLM.setParent(tableLM);
-        //Calculate width of cell
-        int spanWidth = 0;
-        @SuppressWarnings("unchecked")
-        Iterator<TableColumn> colIter = tableLM.getTable().getColumns().listIterator(
-                primary.getColIndex());
-        for (int i = 0, c = primary.getCell().getNumberColumnsSpanned(); i < c; i++) {
-            spanWidth += colIter.next().getColumnWidth().getValue(tableLM);
-        }
+        return cellLM;
+    }
 
-        LayoutContext childLC = LayoutContext.offspringOf(context);
-        childLC.setStackLimitBP(context.getStackLimitBP());
-        childLC.setRefIPD(spanWidth);
+    /**
+     * Merges the measured widths of a PGU into the widths of its columns. If the content could
+     * not be measured, the widths are derived from the element list of the cell instead.
+     * @param primary the PGU
+     * @param widths the widths of the cell's content, or null if they could not be measured
+     * @param context the layout context
+     * @param alignment the alignment
+     */
+    private void mergeWidthOfPrimary(PrimaryGridUnit primary, WidthSummary widths,
+                                     LayoutContext context, int alignment) {
+        LayoutContext childLC = createCellLayoutContext(primary, context);
+        int spanWidth = childLC.getRefIPD();
+
+        if (widths != null) {
+            int ipd = spanWidth;
+            if (primary.getCellLM().isAutoLayout() || childLC.isChildOfAutoLayoutElement()) {
+                ipd = Math.max(ipd, widths.getMaxWidth());
+            }
+            setBaseLength(primary, widths.getMinWidth(), ipd, context);
+            primary.releaseCellLM();
+            return;
+        }
+        // the content cannot be measured: recreate the (partially measured) cell LM
+        // and fall back to the element list
+        TableCellLayoutManager cellLM = createCellLM(primary);
 
         /* Works fine.  See: fop/test/layoutengine/standard-testcases/table-layout_auto_single_column.xml
         // TODO: ugly workaround to deal with one-column tables which would be rendered broken otherwise
@@ -1037,6 +1401,7 @@ public class TableContentLayoutManager implements PercentBaseContext {
 
         //Get the element list for the cell contents
         List elems = cellLM.getNextKnuthElements(childLC, alignment);
+        cellsMeasuredFromElements = true;
         // temporarily assign these KnuthElements to the PGU to calculate its dimensions
         primary.setElements(elems);
         setBaseLength(primary, context);
@@ -1044,6 +1409,158 @@ public class TableContentLayoutManager implements PercentBaseContext {
         // reset the PGU (and thereby reset (even destroy?) all contained LayoutManagers)
         // the dimensions, however, are still present in form of a MinOptMax!
         primary.setElements(null);
+
+        // the content fitted into the span without widening it, so the elements are the
+        // same the final layout run would create for this width: keep them for reuse,
+        // unless the table is laid out with as little retained state as possible
+        if (cellLM.getRefIPD() == spanWidth && !cellLM.isWidenedForAutoLayout()
+                && isReusable(primary.getCell()) && !isStreaming()) {
+            primary.setMeasuredElements(elems, spanWidth);
+        } else {
+            primary.releaseCellLM();
+        }
+    }
+
+    /**
+     * Called once all areas of a cell have been added. In streaming mode, the layout manager
+     * and the element list of a body cell are released then, as the cell is not laid out
+     * again. Header and footer cells are kept, since they may be repeated on every page.
+     * @param primary the PGU of the cell
+     * @see org.apache.fop.apps.LayoutTuning#isAutoTableLayoutStreaming()
+     */
+    void cellAreasAdded(PrimaryGridUnit primary) {
+        cellContentLengths.remove(primary);
+        if (primary.getTablePart() instanceof TableBody && tableLM.isAutoLayout() && isStreaming()) {
+            primary.releaseCellLM();
+        }
+    }
+
+    /**
+     * Computes the length of the content of a part of a cell. The element list of the cell is
+     * indexed once, so that this takes constant time for every further part of the cell.
+     * @param primary the PGU of the cell
+     * @param startIndex the index of the first element of the part
+     * @param endIndex the index of the last element of the part
+     * @return the content length of the part, glues and penalties at its beginning excluded
+     */
+    int getContentLength(PrimaryGridUnit primary, int startIndex, int endIndex) {
+        if (startIndex > endIndex) {
+            return 0;
+        }
+        @SuppressWarnings("unchecked")
+        List<ListElement> elems = primary.getElements();
+        CellContentLengths lengths = cellContentLengths.get(primary);
+        if (lengths == null || !lengths.isFor(elems)) {
+            lengths = new CellContentLengths(elems);
+            cellContentLengths.put(primary, lengths);
+        }
+        return lengths.getContentLength(startIndex, endIndex);
+    }
+
+    /**
+     * @return true if this table is laid out in streaming mode
+     * @see org.apache.fop.apps.LayoutTuning#isAutoTableLayoutStreaming()
+     */
+    private boolean isStreaming() {
+        if (streaming == null) {
+            FopFactory factory = FopFactory.getFactory(tableLM.getTable().getUserAgent());
+            streaming = factory != null && factory.getLayoutTuning().isAutoTableLayoutStreaming();
+        }
+        return streaming;
+    }
+
+    /**
+     * Creates the layout context for the cell LM of a PGU, with the current width of the
+     * columns spanned by the PGU as reference IPD.
+     */
+    private LayoutContext createCellLayoutContext(PrimaryGridUnit primary, LayoutContext context) {
+        LayoutContext childLC = LayoutContext.offspringOf(context);
+        childLC.setStackLimitBP(context.getStackLimitBP());
+        childLC.setRefIPD(getSpanWidth(primary));
+        return childLC;
+    }
+
+    /**
+     * Calculates the current width of the columns spanned by a PGU.
+     * @param primary the PGU
+     * @return the width of the cell
+     */
+    private int getSpanWidth(PrimaryGridUnit primary) {
+        return tableLM.getColumns().getSpanWidth(primary.getColIndex() + 1,
+                primary.getCell().getNumberColumnsSpanned(), tableLM);
+    }
+
+    /**
+     * Keeps the element lists of the table's cells for the next layout run, together with
+     * the width of the span they were created for. To be called before the table is laid out
+     * again, at a different width, with the same measured column widths: cells whose width
+     * did not change then reuse their elements, and only the others are broken again. Cells
+     * whose elements may not be reused, see {@link #isReusable(TableCell)}, and cells with
+     * markers to retrieve are laid out again in any case.
+     */
+    void retainCellElements() {
+        Table table = tableLM.getTable();
+        if (table.getTableHeader() != null) {
+            retainCellElements(new TableRowIterator(table, TableRowIterator.HEADER));
+        }
+        retainCellElements(new TableRowIterator(table, TableRowIterator.BODY));
+        if (table.getTableFooter() != null) {
+            retainCellElements(new TableRowIterator(table, TableRowIterator.FOOTER));
+        }
+    }
+
+    private void retainCellElements(TableRowIterator iter) {
+        EffRow[] rowGroup;
+        while ((rowGroup = iter.getNextRowGroup()) != null) {
+            for (EffRow row : rowGroup) {
+                for (GridUnit gu : row.getGridUnits()) {
+                    if (gu.isPrimary()) {
+                        PrimaryGridUnit primary = gu.getPrimary();
+                        List elems = primary.getElements();
+                        if (elems != null && isReusable(primary.getCell())
+                                && !containsRetrieveMarker(primary.getCell())) {
+                            primary.setMeasuredElements(elems, getSpanWidth(primary));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the Knuth elements of a cell created during the width determination
+     * may be reused by the final layout run. This is not the case for cells with
+     * retrieve-table-marker descendants, whose content is only known while adding areas, and
+     * for cells with nested tables, which are laid out differently in determination mode.
+     * @param cell the table-cell
+     * @return true if the elements may be reused
+     */
+    private static boolean isReusable(TableCell cell) {
+        return !cell.hasRetrieveTableMarker() && !containsDescendant(cell, Table.class);
+    }
+
+    /**
+     * Indicates whether a cell has retrieve-marker or retrieve-table-marker descendants.
+     * Creating the layout managers of these resolves the markers on the current page, so
+     * such cells must not be measured concurrently.
+     * @param cell the table-cell
+     * @return true if the cell contains markers to retrieve
+     */
+    private static boolean containsRetrieveMarker(TableCell cell) {
+        return cell.hasRetrieveTableMarker() || containsDescendant(cell, AbstractRetrieveMarker.class);
+    }
+
+    private static boolean containsDescendant(FONode node, Class<? extends FONode> type) {
+        FONode.FONodeIterator iter = node.getChildNodes();
+        if (iter != null) {
+            while (iter.hasNext()) {
+                FONode child = iter.next();
+                if (type.isInstance(child) || containsDescendant(child, type)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
 }
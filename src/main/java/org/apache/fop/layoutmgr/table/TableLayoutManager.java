@@ -20,9 +20,9 @@
 package org.apache.fop.layoutmgr.table;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -38,6 +38,7 @@ import org.apache.fop.fo.FObj;
 import org.apache.fop.fo.flow.Marker;
 import org.apache.fop.fo.flow.Markers;
 import org.apache.fop.fo.flow.RetrieveTableMarker;
+import org.apache.fop.fo.flow.table.PrimaryGridUnit;
 import org.apache.fop.fo.flow.table.Table;
 import org.apache.fop.fo.flow.table.TableColumn;
 import org.apache.fop.fo.properties.CommonBorderPaddingBackground;
@@ -83,6 +84,18 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
     private double oldTableUnit;
     private boolean autoLayout = true;
 
+    /*
+     * The column widths determined from the content of an auto layout table, before the
+     * ColumnSetup fitted them into the table's width, and the widths of the static columns
+     * they were determined with. Kept across reset() so that a table laid out again at a
+     * different width is not measured again. If the widths of some cells were determined
+     * from their element lists, they may depend on the table's width, and are only reused
+     * for the reference IPD they were determined with; otherwise, that IPD is -1.
+     */
+    private ColumnWidths measuredColumnWidths;
+    private int[] measuredStaticColumnWidths;
+    private int measuredRefIPD;
+
     private int halfBorderSeparationBPD;
     private int halfBorderSeparationIPD;
 
@@ -205,7 +218,7 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
     /** {@inheritDoc} */
     public List getNextKnuthElements(LayoutContext context, int alignment) {
 
-        List returnList = new LinkedList();
+        List returnList = new ArrayList();
 
         /*
          * Compute the IPD and adjust it if necessary (overconstrained)
@@ -223,12 +236,14 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
             }
             updateContentAreaIPDwithOverconstrainedAdjust(context);
         }
+        columns.invalidateColumnWidths();
         int sumOfColumns = columns.getSumOfColumnWidths(this);
         if (!autoLayout && sumOfColumns > getContentAreaIPD()) {
             log.debug(FONode.decorateWithContextInfo(
                     "The sum of all column widths is larger than the specified table width.",
                     getTable()));
             updateContentAreaIPDwithOverconstrainedAdjust(sumOfColumns);
+            columns.invalidateColumnWidths();
         }
         int availableIPD = referenceIPD - getIPIndents();
         if (getContentAreaIPD() > availableIPD) {
@@ -245,6 +260,7 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
         if (tableUnit == 0.0) {
             tableUnit = columns.computeTableUnit(this, context);
             tableUnit = Math.max(tableUnit, oldTableUnit);
+            columns.invalidateColumnWidths();
         }
 
         if (!firstVisibleMarkServed) {
@@ -273,17 +289,43 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
         childLC.copyPendingMarksFrom(context);
 
         // width determination is required for any elements in auto-layout containers
+        boolean sampled = false;
         if (isAutoLayout() || context.isChildOfAutoLayoutElement()) {
             childLC.setChildOfAutoLayoutElement(true);
             childLC.setInAutoLayoutDeterminationMode(true);
-            contentLM.determineAutoLayoutWidths(childLC, alignment);
+            if (isAutoLayout() && !context.isInAutoLayoutDeterminationMode()) {
+                if (measuredColumnWidths != null
+                        && Arrays.equals(measuredStaticColumnWidths, getStaticColumnWidths())
+                        && (measuredRefIPD < 0 || measuredRefIPD == context.getRefIPD())) {
+                    // the content was measured before, only the table's width changed since
+                    contentLM.getColumnWidths().copyFrom(measuredColumnWidths);
+                } else {
+                    AutoLayoutSample sample = AutoLayoutSample.forTable(getTable());
+                    contentLM.setAutoLayoutSample(sample);
+                    contentLM.determineAutoLayoutWidths(childLC, alignment);
+                    sampled = sample != null;
+                    if (!sampled) {
+                        measuredColumnWidths = contentLM.getColumnWidths().copy();
+                        measuredStaticColumnWidths = getStaticColumnWidths();
+                        measuredRefIPD = contentLM.hasCellsMeasuredFromElements()
+                                ? context.getRefIPD() : -1;
+                    } else {
+                        // the widths may still change if unsampled cells overflow
+                        measuredColumnWidths = null;
+                    }
+                }
+            } else {
+                contentLM.determineAutoLayoutWidths(childLC, alignment);
+            }
 
             // determination mode ends only if the parent is not still in this mode
             if (!context.isInAutoLayoutDeterminationMode()) {
                 childLC.setInAutoLayoutDeterminationMode(false);
             }
 
-            int maxCol = columns.computeOptimalColumnWidthsForAutoLayout(this, context, getTable().getWidth());
+            // with sampled rows, too wide columns are only reported once their widths are final
+            int maxCol = columns.computeOptimalColumnWidthsForAutoLayout(this, context,
+                    getTable().getWidth(), sampled);
             // report the determined maximum width to the enquiring parent
             if (context.isChildOfAutoLayoutElement() && context.isInAutoLayoutDeterminationMode()) {
                 context.setRefIPD(maxCol);
@@ -291,6 +333,22 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
         }
 
         contentKnuthElements = contentLM.getNextKnuthElements(childLC, alignment);
+        if (contentLM.hasOverflowingUnsampledCells()) {
+            // cells of rows left out of the width determination overflow their columns:
+            // measure all cells of these columns and lay out the content again
+            childLC.setInAutoLayoutDeterminationMode(true);
+            contentLM.determineAutoLayoutWidthsOfOverflowingColumns(childLC, alignment);
+            childLC.setInAutoLayoutDeterminationMode(false);
+            columns.computeOptimalColumnWidthsForAutoLayout(this, context, getTable().getWidth());
+            contentKnuthElements = contentLM.getNextKnuthElements(childLC, alignment);
+        } else if (sampled) {
+            columns.reportColumnsTooWide(this);
+            if (contentLM.hasOverflowingSampledCells()) {
+                // lay out the content again with the same column widths, reporting the overflow
+                contentLM.endAutoLayoutSample();
+                contentKnuthElements = contentLM.getNextKnuthElements(childLC, alignment);
+            }
+        }
         //Set index values on elements coming from the content LM
         for (Object contentKnuthElement : contentKnuthElements) {
             ListElement el = (ListElement) contentKnuthElement;
@@ -333,6 +391,21 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
         return returnList;
     }
 
+    /**
+     * @return the resolved widths of the columns with a static width, in column order
+     */
+    private int[] getStaticColumnWidths() {
+        int[] widths = new int[columns.getColumnCount()];
+        int i = 0;
+        for (Iterator<TableColumn> iter = columns.iterator(); iter.hasNext(); i++) {
+            TableColumn tcol = iter.next();
+            if (!tcol.isAutoLayout()) {
+                widths[i] = tcol.getColumnWidth().getValue(this);
+            }
+        }
+        return widths;
+    }
+
     /** {@inheritDoc} */
     public Position getAuxiliaryPosition() {
         /*
@@ -540,7 +613,7 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
     public MinOptMax getPossibleWidths(TableColumn tcol, LayoutContext context) {
         if (this.contentLM != null && (isAutoLayout() || context.isChildOfAutoLayoutElement())) {
             if (tcol.isAutoLayout()) {
-                final MinOptMax length = this.contentLM.getBaseLength(tcol);
+                final MinOptMax length = this.contentLM.getColumnWidths().get(ColumnWidths.indexOf(tcol));
                 if (length != null) {
                     return length;
                 }
@@ -556,6 +629,27 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
         return null;
     }
 
+    /**
+     * Returns the widths of the columns with automatic layout, as determined from their
+     * content and adjusted by the {@link ColumnSetup}. Unlike
+     * {@link #getPossibleWidths(TableColumn, LayoutContext)} this gives access to the widths
+     * without creating any {@link MinOptMax} objects.
+     * @return the column widths, or null if the content has not been laid out yet
+     */
+    ColumnWidths getColumnWidths() {
+        return this.contentLM != null ? this.contentLM.getColumnWidths() : null;
+    }
+
+    /**
+     * Called by a cell whose content overflows it.
+     * @param primary the PGU of the cell
+     * @return true if the overflow has been handled and is not to be reported
+     * @see TableContentLayoutManager#handleCellOverflow(PrimaryGridUnit)
+     */
+    boolean handleCellOverflow(PrimaryGridUnit primary) {
+        return contentLM != null && contentLM.handleCellOverflow(primary);
+    }
+
     /** {@inheritDoc} */
     final boolean isAutoLayout() {
         return getTable().isAutoLayout();
@@ -593,9 +687,10 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
                 // a static column should always requires the same amount of space
                 staticWidth += tcol.getColumnWidth().getValue(this);
             } else {
-                MinOptMax width = contentLM.getBaseLength(tcol);
-                if (width != null) {
-                    widestMinWidthForAutoColumns = Math.max(widestMinWidthForAutoColumns, width.getMin());
+                ColumnWidths widths = contentLM.getColumnWidths();
+                int col = ColumnWidths.indexOf(tcol);
+                if (widths.isSet(col)) {
+                    widestMinWidthForAutoColumns = Math.max(widestMinWidthForAutoColumns, widths.getMin(col));
                 }
                 autoColumns++;
             }
@@ -609,11 +704,12 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
      */
     private int getMinimumIPDforAutoLayout() {
         int curMinIPD = 0;
+        ColumnWidths widths = contentLM.getColumnWidths();
         for (Iterator<TableColumn> iter = columns.iterator(); iter.hasNext(); ) {
             TableColumn tcol = iter.next();
-            MinOptMax width = contentLM.getBaseLength(tcol);
-            if (width != null) {
-                curMinIPD += width.getMin();
+            int col = ColumnWidths.indexOf(tcol);
+            if (widths.isSet(col)) {
+                curMinIPD += widths.getMin(col);
             }
         }
         return curMinIPD;
@@ -649,8 +745,9 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
                 case LengthBase.TABLE_UNITS:
                     if (this.contentLM != null && isAutoLayout()) {
                         if (((TableColumn) fobj).isAutoLayout()) {
-                            final MinOptMax length = this.contentLM.getBaseLength(fobj);
-                            return length == null ? 0 : length.getOpt();
+                            final ColumnWidths widths = this.contentLM.getColumnWidths();
+                            final int col = ColumnWidths.indexOf((TableColumn) fobj);
+                            return widths.isSet(col) ? widths.getOpt(col) : 0;
                         }
                     }
                     return (int) this.tableUnit;
@@ -670,10 +767,16 @@ public class TableLayoutManager extends SpacedBorderedPaddedBlockLayoutManager
 
     /** {@inheritDoc} */
     public void reset() {
+        if (contentLM != null && measuredColumnWidths != null) {
+            // the column widths are not determined again, so cells keeping their width
+            // need not be broken into lines again either
+            contentLM.retainCellElements();
+        }
         super.reset();
         curBlockArea = null;
         oldTableUnit = tableUnit;
         tableUnit = 0.0;
+        columns.invalidateColumnWidths();
     }
 
     /**
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.fop.layoutmgr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Breaking algorithm listener which commits a JDK Flight Recorder event for every search,
+ * named <code>org.apache.fop.BreakingAlgorithm</code>. The events are only recorded while a
+ * recording which enables them is running. This class requires the <code>jdk.jfr</code>
+ * module of Java 11 or later; it is only compiled by the <code>jfr</code> profile, and only
+ * loaded if it is registered.
+ */
+public final class JfrBreakingAlgorithmListener implements BreakingAlgorithmListener {
+
+    /** {@inheritDoc} */
+    public void searchFinished(BreakingMetrics metrics) {
+        BreakingAlgorithmEvent event = new BreakingAlgorithmEvent();
+        if (event.shouldCommit()) {
+            event.layoutManager = metrics.getLayoutManagerType();
+            event.algorithm = metrics.getAlgorithmType();
+            event.retry = metrics.getRetryCount();
+            event.searches = metrics.getSearchCount();
+            event.threshold = metrics.getThreshold();
+            event.forced = metrics.isForced();
+            event.elements = metrics.getElementCount();
+            event.peakActiveNodes = metrics.getPeakActiveNodeCount();
+            event.createdNodes = metrics.getCreatedNodeCount();
+            event.deactivatedNodes = metrics.getDeactivatedNodeCount();
+            event.tooLongRecoveries = metrics.getTooLongRecoveryCount();
+            event.overflowRecoveries = metrics.getOverflowRecoveryCount();
+            event.lines = metrics.getLineCount();
+            event.wallTime = metrics.getWallTime();
+            event.commit();
+        }
+    }
+
+    @Name("org.apache.fop.BreakingAlgorithm")
+    @Label("Breaking Algorithm Search")
+    @Category({"Apache FOP", "Layout"})
+    @Description("A search of a line or page breaking algorithm")
+    static final class BreakingAlgorithmEvent extends Event {
+
+        @Label("Layout Manager")
+        Class<?> layoutManager;
+
+        @Label("Algorithm")
+        Class<?> algorithm;
+
+        @Label("Retry")
+        int retry;
+
+        @Label("Searches")
+        int searches;
+
+        @Label("Threshold")
+        double threshold;
+
+        @Label("Forced")
+        boolean forced;
+
+        @Label("Elements")
+        int elements;
+
+        @Label("Peak Active Nodes")
+        int peakActiveNodes;
+
+        @Label("Created Nodes")
+        int createdNodes;
+
+        @Label("Deactivated Nodes")
+        int deactivatedNodes;
+
+        @Label("Too Long Recoveries")
+        int tooLongRecoveries;
+
+        @Label("Overflow Recoveries")
+        int overflowRecoveries;
+
+        @Label("Lines")
+        int lines;
+
+        @Label("Wall Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long wallTime;
+    }
+}